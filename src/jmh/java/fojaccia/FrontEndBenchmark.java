@@ -0,0 +1,63 @@
+package fojaccia;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Scanner, Parser and Resolver on generated sources from 10 KB to 10 MB. The
+ * Parser pulls tokens from the Scanner as it goes, so parsing includes
+ * scanning; resolving gets the parsed statements precomputed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class FrontEndBenchmark {
+
+  @Param({ "10240", "102400", "1048576", "10485760" })
+  int size;
+
+  private String source;
+  private List<Stmt> statements;
+
+  @Setup
+  public void setup() {
+    source = SourceGenerator.generate(size);
+    statements = new Parser(new Scanner(source).tokens()).parse();
+  }
+
+  @Benchmark
+  public int scan() {
+    TokenBuffer tokens = new Scanner(source).tokens();
+    int count = 0;
+    while (tokens.type(count) != TokenType.EOF) {
+      count++;
+    }
+    return count;
+  }
+
+  @Benchmark
+  public List<Stmt> parse() {
+    return new Parser(new Scanner(source).tokens()).parse();
+  }
+
+  @Benchmark
+  public List<Stmt> resolve() {
+    new Resolver().resolve(statements);
+    return statements;
+  }
+}
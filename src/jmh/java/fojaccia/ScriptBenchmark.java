@@ -0,0 +1,86 @@
+package fojaccia;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Whole programs end to end (scan, parse, resolve and run) on both engines.
+ * Paths are relative to the project root, so run the harness from there.
+ * Script output is discarded.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScriptBenchmark {
+
+  @Param({
+      "demos/composition.foj",
+      "demos/demo.foj",
+      "demos/fibs.foj",
+      "demos/forloop.foj",
+      "demos/functions.foj",
+      "demos/print.foj",
+      "demos/printdown.foj",
+      "demos/returns.foj",
+      "demos/whileloop.foj",
+      "benchmarks/calls.foj",
+      "benchmarks/loops.foj",
+      "benchmarks/strings.foj",
+      "benchmarks/classes.foj",
+  })
+  String script;
+
+  @Param({ "tree", "vm" })
+  String engine;
+
+  private String source;
+  private PrintStream stdout;
+
+  @Setup
+  public void setup() throws IOException {
+    source = new String(Files.readAllBytes(Paths.get(script)), Charset.defaultCharset());
+    stdout = System.out;
+    System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+  }
+
+  @TearDown
+  public void tearDown() {
+    System.setOut(stdout);
+  }
+
+  @Benchmark
+  public List<Stmt> run() {
+    List<Stmt> statements = new Parser(new Scanner(source).tokens()).parse();
+    new Resolver().resolve(statements);
+    if (engine.equals("vm")) {
+      new VM().interpret(statements, Map.of());
+    } else {
+      new Interpreter().interpret(statements, Map.of());
+    }
+    return statements;
+  }
+}
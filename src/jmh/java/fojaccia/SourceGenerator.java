@@ -0,0 +1,44 @@
+package fojaccia;
+
+/**
+ * Produces syntactically valid Fojaccia programs of roughly a requested size
+ * for the front-end benchmarks. The output is deterministic so results stay
+ * comparable between runs.
+ */
+final class SourceGenerator {
+
+  private SourceGenerator() {
+  }
+
+  static String generate(int bytes) {
+    StringBuilder source = new StringBuilder(bytes + 1024);
+    for (int i = 0; source.length() < bytes; i++) {
+      appendUnit(source, i);
+    }
+    return source.toString();
+  }
+
+  private static void appendUnit(StringBuilder source, int i) {
+    source.append("// unit ").append(i).append('\n');
+    source.append("fn helper").append(i).append("(a, b) {\n");
+    source.append("  var total = 0;\n");
+    source.append("  for (var k = 0; k < a; k = k + 1) {\n");
+    source.append("    if (k / 2 == b and !(k > 10)) {\n");
+    source.append("      total = total + k * 3.5;\n");
+    source.append("    } else {\n");
+    source.append("      total = total - 1;\n");
+    source.append("    }\n");
+    source.append("  }\n");
+    source.append("  return total + a * (b - 2) / 4;\n");
+    source.append("}\n");
+    source.append("class Shape").append(i).append(" {\n");
+    source.append("  init(w, h) { this.w = w; this.h = h; }\n");
+    source.append("  area() { return this.w * this.h; }\n");
+    source.append("}\n");
+    source.append("var value").append(i).append(" = helper").append(i)
+        .append("(3, 1) + Shape").append(i).append("(2, 3).area();\n");
+    source.append("var label").append(i).append(" = \"label \" + value").append(i).append(";\n");
+    source.append("while (value").append(i).append(" < 0 or false) { value")
+        .append(i).append(" = value").append(i).append(" + 1; }\n");
+  }
+}
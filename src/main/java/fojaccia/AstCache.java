@@ -0,0 +1,688 @@
+package fojaccia;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import fojaccia.Fojaccia.LogLevel;
+
+/**
+ * Resolved syntax trees kept on disk, so a script that hasn't changed since
+ * it last ran skips scanning, parsing and resolving and is read straight back
+ * out of a mapped file.
+ *
+ * Entries are keyed by a hash of the source along with the classes that turn
+ * source into a tree, so changing either one means starting over. Trees are
+ * stored as the Resolver leaves them, before the Optimizer runs, and only
+ * when they came out without errors.
+ *
+ * Entries go in ~/.cache/fojaccia, or wherever -Dfoj.cache.dir points, and
+ * caching is turned off with -Dfoj.cache=false.
+ */
+final class AstCache {
+  static final boolean enabled = !"false".equalsIgnoreCase(System.getProperty("foj.cache"));
+
+  private static final int MAGIC = 0x464f4a43; // FOJC
+  // What goes from source to tree; the key changes along with any of them
+  private static final Class<?>[] FRONT_END = { Scanner.class, TokenBuffer.class, Parser.class,
+      Resolver.class, Stmt.class, Expr.class, AstCache.class };
+
+  // Node tags, zero for null
+  private static final int EXPRESSION = 1, PRINT = 2, RETURN = 3, IF = 4, WHILE = 5,
+      VAR = 6, BLOCK = 7, CLASS = 8, FUNCTION = 9, IMPORT = 10, SPAWN = 11;
+  private static final int BINARY = 1, UNARY = 2, CALL = 3, GROUPING = 4, LITERAL = 5,
+      LOGICAL = 6, VARIABLE = 7, ASSIGNMENT = 8, GET = 9, SET = 10, THIS = 11, SUPER = 12;
+  private static final int NULL = 0, FALSE = 1, TRUE = 2, NUMBER = 3, STRING = 4;
+
+  private static final TokenType[] TYPES = TokenType.values();
+
+  private AstCache() {
+  }
+
+  /**
+   * The key the source's tree is stored under.
+   */
+  static String key(ByteBuffer source) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    for (Class<?> type : FRONT_END) {
+      digestClass(digest, type);
+    }
+    digest.update(source.duplicate());
+    return HexFormat.of().formatHex(digest.digest());
+  }
+
+  private static void digestClass(MessageDigest digest, Class<?> type) {
+    String resource = "/" + type.getName().replace('.', '/') + ".class";
+    try (InputStream bytes = AstCache.class.getResourceAsStream(resource)) {
+      if (bytes != null) {
+        digest.update(bytes.readAllBytes());
+      }
+    } catch (IOException e) {
+      // Only makes for a key that's harder to hit
+      digest.update(type.getName().getBytes(StandardCharsets.UTF_8));
+    }
+    Class<?>[] nested = type.getDeclaredClasses();
+    Arrays.sort(nested, Comparator.comparing(Class::getName));
+    for (Class<?> inner : nested) {
+      digestClass(digest, inner);
+    }
+  }
+
+  /**
+   * The tree stored under the key, or null if there isn't one that can be
+   * read.
+   */
+  static List<Stmt> load(String key) {
+    Path path = directory().resolve(key + ".ast");
+    ByteBuffer bytes;
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    } catch (NoSuchFileException e) {
+      return null;
+    } catch (IOException e) {
+      Fojaccia.Log(LogLevel.DEBUG, "cache: couldn't read " + path + ": " + e);
+      return null;
+    }
+
+    try {
+      List<Stmt> statements = new Reader(bytes).statements();
+      Fojaccia.Log(LogLevel.DEBUG, () -> "cache: loaded " + path);
+      return statements;
+    } catch (RuntimeException e) {
+      // Truncated or otherwise not what was written; it'll be stored again
+      Fojaccia.Log(LogLevel.DEBUG, "cache: ignoring " + path + ": " + e);
+      return null;
+    }
+  }
+
+  static void store(String key, List<Stmt> statements) {
+    Path directory = directory();
+    Path path = directory.resolve(key + ".ast");
+    Path temporary = null;
+    try {
+      byte[] bytes = new Writer().statements(statements);
+      Files.createDirectories(directory);
+      // Written whole and then moved into place, so nothing reads half of it
+      temporary = Files.createTempFile(directory, key, ".tmp");
+      Files.write(temporary, bytes);
+      Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      Fojaccia.Log(LogLevel.DEBUG, () -> "cache: stored " + path + " (" + bytes.length + " bytes)");
+    } catch (IOException e) {
+      Fojaccia.Log(LogLevel.DEBUG, "cache: couldn't store " + path + ": " + e);
+      if (temporary != null) {
+        try {
+          Files.deleteIfExists(temporary);
+        } catch (IOException ignored) {
+        }
+      }
+    }
+  }
+
+  private static Path directory() {
+    String directory = System.getProperty("foj.cache.dir");
+    if (directory != null)
+      return Paths.get(directory);
+    return Paths.get(System.getProperty("user.home"), ".cache", "fojaccia");
+  }
+
+  /**
+   * Writes a tree out depth first, each node as its tag followed by its
+   * fields. Numbers are written as varints, a token's line as the distance
+   * from the last token's, and each distinct string only the first time it's
+   * used, after which it's referred to by index.
+   */
+  private static final class Writer implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    private byte[] bytes = new byte[4096];
+    private int size = 0;
+    private final Map<String, Integer> strings = new HashMap<>();
+    // Constants, numbered in the order they're written, for Variables to refer to
+    private final Map<Stmt.Var, Integer> constants = new IdentityHashMap<>();
+    private int line = 0;
+
+    byte[] statements(List<Stmt> statements) {
+      for (int shift = 24; shift >= 0; shift -= 8) {
+        writeByte(MAGIC >> shift);
+      }
+      writeStatements(statements);
+      return Arrays.copyOf(bytes, size);
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression statement) {
+      writeByte(EXPRESSION);
+      write(statement.expression);
+      return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print statement) {
+      writeByte(PRINT);
+      write(statement.expression);
+      return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return statement) {
+      writeByte(RETURN);
+      write(statement.keyword);
+      write(statement.value);
+      writeByte(statement.tailCall != null ? 1 : 0);
+      return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If statement) {
+      writeByte(IF);
+      write(statement.condition);
+      write(statement.thenBranch);
+      write(statement.elseBranch);
+      return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While statement) {
+      writeByte(WHILE);
+      write(statement.keyword);
+      write(statement.condition);
+      write(statement.body);
+      return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var statement) {
+      writeByte(VAR);
+      write(statement.name);
+      write(statement.initializer);
+      writeByte(statement.constant ? 1 : 0);
+      writeInt(statement.slot);
+      if (statement.constant) {
+        constants.put(statement, constants.size());
+      }
+      return null;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block statement) {
+      writeByte(BLOCK);
+      writeStatements(statement.statements);
+      writeInt(statement.scopeSize);
+      return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class statement) {
+      writeByte(CLASS);
+      write(statement.name);
+      write(statement.superclass);
+      writeInt(statement.methods.size());
+      for (Stmt.Function method : statement.methods) {
+        write(method);
+      }
+      writeInt(statement.slot);
+      writeInt(statement.superMethods.size());
+      for (String method : statement.superMethods) {
+        writeString(method);
+      }
+      return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function statement) {
+      writeByte(FUNCTION);
+      write(statement.name);
+      writeInt(statement.params.size());
+      for (Token param : statement.params) {
+        write(param);
+      }
+      writeStatements(statement.body);
+      writeInt(statement.slot);
+      writeInt(statement.scopeSize);
+      writeByte(statement.memoized ? 1 : 0);
+      return null;
+    }
+
+    @Override
+    public Void visitImportStmt(Stmt.Import statement) {
+      writeByte(IMPORT);
+      write(statement.keyword);
+      writeString(statement.path);
+      return null;
+    }
+
+    @Override
+    public Void visitSpawnStmt(Stmt.Spawn statement) {
+      writeByte(SPAWN);
+      write(statement.keyword);
+      write(statement.call);
+      return null;
+    }
+
+    @Override
+    public Void visitBinary(Expr.Binary exp) {
+      writeByte(BINARY);
+      write(exp.left);
+      write(exp.operator);
+      write(exp.right);
+      return null;
+    }
+
+    @Override
+    public Void visitUnary(Expr.Unary exp) {
+      writeByte(UNARY);
+      write(exp.operator);
+      write(exp.right);
+      return null;
+    }
+
+    @Override
+    public Void visitCall(Expr.Call exp) {
+      writeByte(CALL);
+      write(exp.callee);
+      write(exp.paren);
+      writeInt(exp.arguments.size());
+      for (Expr argument : exp.arguments) {
+        write(argument);
+      }
+      return null;
+    }
+
+    @Override
+    public Void visitGrouping(Expr.Grouping exp) {
+      writeByte(GROUPING);
+      write(exp.expression);
+      return null;
+    }
+
+    @Override
+    public Void visitLiteral(Expr.Literal exp) {
+      writeByte(LITERAL);
+      if (exp.value == null) {
+        writeByte(NULL);
+      } else if (exp.value instanceof Boolean bool) {
+        writeByte(bool ? TRUE : FALSE);
+      } else if (exp.value instanceof Double number) {
+        writeByte(NUMBER);
+        writeLong(Double.doubleToRawLongBits(number));
+      } else {
+        writeByte(STRING);
+        writeString((String) exp.value);
+      }
+      return null;
+    }
+
+    @Override
+    public Void visitLogical(Expr.Logical exp) {
+      writeByte(LOGICAL);
+      write(exp.left);
+      write(exp.operator);
+      write(exp.right);
+      return null;
+    }
+
+    @Override
+    public Void visitVariable(Expr.Variable exp) {
+      writeByte(VARIABLE);
+      write(exp.name);
+      writeReference(exp);
+      Integer constant = exp.constant == null ? null : constants.get(exp.constant);
+      writeInt(constant == null ? -1 : constant);
+      return null;
+    }
+
+    @Override
+    public Void visitAssignment(Expr.Assignment exp) {
+      writeByte(ASSIGNMENT);
+      write(exp.name);
+      write(exp.value);
+      writeReference(exp);
+      return null;
+    }
+
+    @Override
+    public Void visitGet(Expr.Get exp) {
+      writeByte(GET);
+      write(exp.object);
+      write(exp.name);
+      return null;
+    }
+
+    @Override
+    public Void visitSet(Expr.Set exp) {
+      writeByte(SET);
+      write(exp.object);
+      write(exp.name);
+      write(exp.value);
+      return null;
+    }
+
+    @Override
+    public Void visitThis(Expr.This exp) {
+      writeByte(THIS);
+      write(exp.keyword);
+      writeReference(exp);
+      return null;
+    }
+
+    @Override
+    public Void visitSuper(Expr.Super exp) {
+      writeByte(SUPER);
+      write(exp.keyword);
+      write(exp.method);
+      writeReference(exp);
+      writeInt(exp.index);
+      writeInt(exp.receiver);
+      return null;
+    }
+
+    private void writeStatements(List<Stmt> statements) {
+      writeInt(statements.size());
+      for (Stmt statement : statements) {
+        write(statement);
+      }
+    }
+
+    private void write(Stmt statement) {
+      if (statement == null) {
+        writeByte(0);
+      } else {
+        statement.accept(this);
+      }
+    }
+
+    private void write(Expr exp) {
+      if (exp == null) {
+        writeByte(0);
+      } else {
+        exp.accept(this);
+      }
+    }
+
+    private void writeReference(Expr.Reference exp) {
+      writeInt(exp.depth);
+      writeInt(exp.slot);
+    }
+
+    private void write(Token token) {
+      writeInt(token.type.ordinal());
+      writeString(token.lexeme);
+      writeInt(token.line - line);
+      line = token.line;
+    }
+
+    private void writeString(String string) {
+      Integer index = strings.get(string);
+      if (index != null) {
+        writeInt(index);
+        return;
+      }
+      // A new string takes the next index
+      writeInt(strings.size());
+      strings.put(string, strings.size());
+      byte[] utf8 = string.getBytes(StandardCharsets.UTF_8);
+      writeInt(utf8.length);
+      for (byte b : utf8) {
+        writeByte(b);
+      }
+    }
+
+    // Zigzag varint, so the -1s for globals take a byte
+    private void writeInt(int value) {
+      int bits = (value << 1) ^ (value >> 31);
+      while ((bits & ~0x7f) != 0) {
+        writeByte((bits & 0x7f) | 0x80);
+        bits >>>= 7;
+      }
+      writeByte(bits);
+    }
+
+    private void writeLong(long value) {
+      for (int shift = 56; shift >= 0; shift -= 8) {
+        writeByte((int) (value >> shift));
+      }
+    }
+
+    private void writeByte(int value) {
+      if (size == bytes.length) {
+        bytes = Arrays.copyOf(bytes, size * 2);
+      }
+      bytes[size++] = (byte) value;
+    }
+  }
+
+  /**
+   * Reads back what the Writer wrote, in the same order.
+   */
+  private static final class Reader {
+    private final ByteBuffer bytes;
+    private final List<String> strings = new ArrayList<>();
+    private final List<Stmt.Var> constants = new ArrayList<>();
+    private int line = 0;
+
+    Reader(ByteBuffer bytes) {
+      this.bytes = bytes;
+    }
+
+    List<Stmt> statements() {
+      if (bytes.getInt() != MAGIC)
+        throw new IllegalStateException("not a syntax tree");
+      List<Stmt> statements = readStatements();
+      if (bytes.hasRemaining())
+        throw new IllegalStateException("trailing bytes");
+      return statements;
+    }
+
+    private Stmt readStatement() {
+      int tag = bytes.get();
+      switch (tag) {
+        case 0:
+          return null;
+        case EXPRESSION:
+          return new Stmt.Expression(readExpr());
+        case PRINT:
+          return new Stmt.Print(readExpr());
+        case RETURN: {
+          Stmt.Return statement = new Stmt.Return(readToken(), readExpr());
+          if (bytes.get() != 0) {
+            Expr value = statement.value;
+            while (value instanceof Expr.Grouping grouping) {
+              value = grouping.expression;
+            }
+            statement.tailCall = (Expr.Call) value;
+          }
+          return statement;
+        }
+        case IF:
+          return new Stmt.If(readExpr(), readStatement(), readStatement());
+        case WHILE:
+          return new Stmt.While(readToken(), readExpr(), readStatement());
+        case VAR: {
+          Stmt.Var statement = new Stmt.Var(readToken(), readExpr(), bytes.get() != 0);
+          statement.slot = readInt();
+          if (statement.constant) {
+            constants.add(statement);
+          }
+          return statement;
+        }
+        case BLOCK: {
+          Stmt.Block statement = new Stmt.Block(readStatements());
+          statement.scopeSize = readInt();
+          return statement;
+        }
+        case CLASS: {
+          Token name = readToken();
+          Expr.Variable superclass = (Expr.Variable) readExpr();
+          List<Stmt.Function> methods = new ArrayList<>();
+          for (int i = readInt(); i > 0; i--) {
+            methods.add((Stmt.Function) readStatement());
+          }
+          Stmt.Class statement = new Stmt.Class(name, superclass, methods);
+          statement.slot = readInt();
+          List<String> superMethods = new ArrayList<>();
+          for (int i = readInt(); i > 0; i--) {
+            superMethods.add(readString());
+          }
+          statement.superMethods = superMethods;
+          return statement;
+        }
+        case FUNCTION: {
+          Token name = readToken();
+          List<Token> params = new ArrayList<>();
+          for (int i = readInt(); i > 0; i--) {
+            params.add(readToken());
+          }
+          Stmt.Function statement = new Stmt.Function(name, params, readStatements());
+          statement.slot = readInt();
+          statement.scopeSize = readInt();
+          statement.memoized = bytes.get() != 0;
+          return statement;
+        }
+        case IMPORT:
+          return new Stmt.Import(readToken(), readString());
+        case SPAWN:
+          return new Stmt.Spawn(readToken(), (Expr.Call) readExpr());
+        default:
+          throw new IllegalStateException("unknown statement " + tag);
+      }
+    }
+
+    private Expr readExpr() {
+      int tag = bytes.get();
+      switch (tag) {
+        case 0:
+          return null;
+        case BINARY:
+          return new Expr.Binary(readExpr(), readToken(), readExpr());
+        case UNARY:
+          return new Expr.Unary(readToken(), readExpr());
+        case CALL: {
+          Expr callee = readExpr();
+          Token paren = readToken();
+          List<Expr> arguments = new ArrayList<>();
+          for (int i = readInt(); i > 0; i--) {
+            arguments.add(readExpr());
+          }
+          return new Expr.Call(callee, paren, arguments);
+        }
+        case GROUPING:
+          return new Expr.Grouping(readExpr());
+        case LITERAL:
+          return new Expr.Literal(readValue());
+        case LOGICAL:
+          return new Expr.Logical(readExpr(), readToken(), readExpr());
+        case VARIABLE: {
+          Expr.Variable exp = new Expr.Variable(readToken());
+          readReference(exp);
+          int constant = readInt();
+          if (constant != -1) {
+            exp.constant = constants.get(constant);
+          }
+          return exp;
+        }
+        case ASSIGNMENT:
+          return readReference(new Expr.Assignment(readToken(), readExpr()));
+        case GET:
+          return new Expr.Get(readExpr(), readToken());
+        case SET:
+          return new Expr.Set(readExpr(), readToken(), readExpr());
+        case THIS:
+          return readReference(new Expr.This(readToken()));
+        case SUPER: {
+          Expr.Super exp = readReference(new Expr.Super(readToken(), readToken()));
+          exp.index = readInt();
+          exp.receiver = readInt();
+          return exp;
+        }
+        default:
+          throw new IllegalStateException("unknown expression " + tag);
+      }
+    }
+
+    private Object readValue() {
+      int tag = bytes.get();
+      switch (tag) {
+        case NULL:
+          return null;
+        case FALSE:
+          return false;
+        case TRUE:
+          return true;
+        case NUMBER:
+          return Double.longBitsToDouble(bytes.getLong());
+        case STRING:
+          return readString();
+        default:
+          throw new IllegalStateException("unknown literal " + tag);
+      }
+    }
+
+    private List<Stmt> readStatements() {
+      List<Stmt> statements = new ArrayList<>();
+      for (int i = readInt(); i > 0; i--) {
+        statements.add(readStatement());
+      }
+      return statements;
+    }
+
+    private <T extends Expr.Reference> T readReference(T exp) {
+      exp.depth = readInt();
+      exp.slot = readInt();
+      return exp;
+    }
+
+    private Token readToken() {
+      TokenType type = TYPES[readInt()];
+      String lexeme = readString();
+      line += readInt();
+      return new Token(type, lexeme, null, line);
+    }
+
+    private String readString() {
+      int index = readInt();
+      if (index < strings.size())
+        return strings.get(index);
+      if (index != strings.size())
+        throw new IllegalStateException("string " + index + " out of order");
+
+      byte[] utf8 = new byte[readInt()];
+      bytes.get(utf8);
+      // Names were interned by the Scanner, so they are here too
+      String string = new String(utf8, StandardCharsets.UTF_8).intern();
+      strings.add(string);
+      return string;
+    }
+
+    private int readInt() {
+      int bits = 0;
+      for (int shift = 0;; shift += 7) {
+        byte b = bytes.get();
+        bits |= (b & 0x7f) << shift;
+        if (b >= 0)
+          break;
+      }
+      return (bits >>> 1) ^ -(bits & 1);
+    }
+  }
+}
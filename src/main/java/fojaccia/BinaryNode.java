@@ -0,0 +1,289 @@
+package fojaccia;
+
+/**
+ * Executable behaviour behind an Expr.Binary. A site starts out
+ * uninitialized, specializes itself on the operand types it first sees, and
+ * drops to the generic version for good once one of its type guards fails.
+ * Nodes hold no per-site state, so every specialization is a shared
+ * singleton and rewriting a site is a single field store.
+ */
+abstract class BinaryNode {
+
+  static final BinaryNode UNINITIALIZED = new BinaryNode() {
+    @Override
+    Object apply(Expr.Binary exp, Object left, Object right) {
+      BinaryNode node = specialize(exp.operator.type, left, right);
+      exp.node = node;
+      return node.apply(exp, left, right);
+    }
+  };
+
+  static final BinaryNode GENERIC = new BinaryNode() {
+    @Override
+    Object apply(Expr.Binary exp, Object left, Object right) {
+      return generic(exp, left, right);
+    }
+  };
+
+  static final BinaryNode NUMBER_ADD = new NumberArithmetic() {
+    @Override
+    double compute(double left, double right) {
+      return left + right;
+    }
+  };
+
+  static final BinaryNode NUMBER_SUBTRACT = new NumberArithmetic() {
+    @Override
+    double compute(double left, double right) {
+      return left - right;
+    }
+  };
+
+  static final BinaryNode NUMBER_MULTIPLY = new NumberArithmetic() {
+    @Override
+    double compute(double left, double right) {
+      return left * right;
+    }
+  };
+
+  static final BinaryNode NUMBER_DIVIDE = new NumberArithmetic() {
+    @Override
+    double compute(double left, double right) {
+      return left / right;
+    }
+  };
+
+  static final BinaryNode NUMBER_GREATER = new NumberComparison() {
+    @Override
+    boolean compare(double left, double right) {
+      return left > right;
+    }
+  };
+
+  static final BinaryNode NUMBER_GREATER_EQUAL = new NumberComparison() {
+    @Override
+    boolean compare(double left, double right) {
+      return left >= right;
+    }
+  };
+
+  static final BinaryNode NUMBER_LESS = new NumberComparison() {
+    @Override
+    boolean compare(double left, double right) {
+      return left < right;
+    }
+  };
+
+  static final BinaryNode NUMBER_LESS_EQUAL = new NumberComparison() {
+    @Override
+    boolean compare(double left, double right) {
+      return left <= right;
+    }
+  };
+
+  static final BinaryNode STRING_CONCAT = new BinaryNode() {
+    @Override
+    Object apply(Expr.Binary exp, Object left, Object right) {
+      if (left instanceof String || right instanceof String) {
+        return Interpreter.makeTreeString(left) + Interpreter.makeTreeString(right);
+      }
+      return generalize(exp, left, right);
+    }
+  };
+
+  static final BinaryNode EQUAL = new BinaryNode() {
+    @Override
+    Object apply(Expr.Binary exp, Object left, Object right) {
+      return Interpreter.isEqual(left, right);
+    }
+  };
+
+  static final BinaryNode NOT_EQUAL = new BinaryNode() {
+    @Override
+    Object apply(Expr.Binary exp, Object left, Object right) {
+      return !Interpreter.isEqual(left, right);
+    }
+  };
+
+  Object execute(Interpreter interpreter, Expr.Binary exp) {
+    Object left = interpreter.evaluate(exp.left);
+    Object right = interpreter.evaluate(exp.right);
+    return apply(exp, left, right);
+  }
+
+  /**
+   * Evaluates the expression for a caller that wants an unboxed number.
+   * Throws UnexpectedResult if the result turns out not to be one.
+   */
+  double executeNumber(Interpreter interpreter, Expr.Binary exp) {
+    return Interpreter.expectNumber(execute(interpreter, exp));
+  }
+
+  /**
+   * Whether executeNumber can produce its result without boxing.
+   */
+  boolean producesNumber() {
+    return false;
+  }
+
+  /**
+   * Combines operands that have already been evaluated. Specializations use
+   * this to hand off to the generic version without re-evaluating anything.
+   */
+  abstract Object apply(Expr.Binary exp, Object left, Object right);
+
+  private abstract static class NumberArithmetic extends BinaryNode {
+    abstract double compute(double left, double right);
+
+    @Override
+    Object execute(Interpreter interpreter, Expr.Binary exp) {
+      try {
+        return executeNumber(interpreter, exp);
+      } catch (UnexpectedResult result) {
+        return result.value;
+      }
+    }
+
+    @Override
+    double executeNumber(Interpreter interpreter, Expr.Binary exp) {
+      double left;
+      try {
+        left = interpreter.evaluateNumber(exp.left);
+      } catch (UnexpectedResult result) {
+        return Interpreter.expectNumber(generalize(exp, result.value, interpreter.evaluate(exp.right)));
+      }
+
+      double right;
+      try {
+        right = interpreter.evaluateNumber(exp.right);
+      } catch (UnexpectedResult result) {
+        return Interpreter.expectNumber(generalize(exp, left, result.value));
+      }
+
+      return compute(left, right);
+    }
+
+    @Override
+    boolean producesNumber() {
+      return true;
+    }
+
+    @Override
+    Object apply(Expr.Binary exp, Object left, Object right) {
+      if (left instanceof Double a && right instanceof Double b) {
+        return compute(a, b);
+      }
+      return generalize(exp, left, right);
+    }
+  }
+
+  private abstract static class NumberComparison extends BinaryNode {
+    abstract boolean compare(double left, double right);
+
+    @Override
+    Object execute(Interpreter interpreter, Expr.Binary exp) {
+      double left;
+      try {
+        left = interpreter.evaluateNumber(exp.left);
+      } catch (UnexpectedResult result) {
+        return generalize(exp, result.value, interpreter.evaluate(exp.right));
+      }
+
+      double right;
+      try {
+        right = interpreter.evaluateNumber(exp.right);
+      } catch (UnexpectedResult result) {
+        return generalize(exp, left, result.value);
+      }
+
+      return compare(left, right);
+    }
+
+    @Override
+    Object apply(Expr.Binary exp, Object left, Object right) {
+      if (left instanceof Double a && right instanceof Double b) {
+        return compare(a, b);
+      }
+      return generalize(exp, left, right);
+    }
+  }
+
+  private static BinaryNode specialize(TokenType operator, Object left, Object right) {
+    boolean numbers = left instanceof Double && right instanceof Double;
+    switch (operator) {
+      case GREATER:
+        return numbers ? NUMBER_GREATER : GENERIC;
+      case GREATER_EQUAL:
+        return numbers ? NUMBER_GREATER_EQUAL : GENERIC;
+      case LESS:
+        return numbers ? NUMBER_LESS : GENERIC;
+      case LESS_EQUAL:
+        return numbers ? NUMBER_LESS_EQUAL : GENERIC;
+      case BANG_EQUAL:
+        return NOT_EQUAL;
+      case EQUAL_EQUAL:
+        return EQUAL;
+      case MINUS:
+        return numbers ? NUMBER_SUBTRACT : GENERIC;
+      case PLUS:
+        if (numbers)
+          return NUMBER_ADD;
+        if (left instanceof String || right instanceof String)
+          return STRING_CONCAT;
+        return GENERIC;
+      case SLASH:
+        return numbers ? NUMBER_DIVIDE : GENERIC;
+      case STAR:
+        return numbers ? NUMBER_MULTIPLY : GENERIC;
+      default:
+        return GENERIC;
+    }
+  }
+
+  private static Object generalize(Expr.Binary exp, Object left, Object right) {
+    exp.node = GENERIC;
+    return generic(exp, left, right);
+  }
+
+  private static Object generic(Expr.Binary exp, Object left, Object right) {
+    switch (exp.operator.type) {
+      case GREATER:
+        Interpreter.verifyNumberOperands(exp.operator, left, right);
+        return (double) left > (double) right;
+      case GREATER_EQUAL:
+        Interpreter.verifyNumberOperands(exp.operator, left, right);
+        return (double) left >= (double) right;
+      case LESS:
+        Interpreter.verifyNumberOperands(exp.operator, left, right);
+        return (double) left < (double) right;
+      case LESS_EQUAL:
+        Interpreter.verifyNumberOperands(exp.operator, left, right);
+        return (double) left <= (double) right;
+      case BANG_EQUAL:
+        return !Interpreter.isEqual(left, right);
+      case EQUAL_EQUAL:
+        return Interpreter.isEqual(left, right);
+      case MINUS:
+        Interpreter.verifyNumberOperands(exp.operator, left, right);
+        return (double) left - (double) right;
+      case PLUS:
+        if (left instanceof Double && right instanceof Double) {
+          return (double) left + (double) right;
+        }
+
+        if (left instanceof String || right instanceof String) {
+          return Interpreter.makeTreeString(left) + Interpreter.makeTreeString(right);
+        }
+
+        throw new RuntimeError(exp.operator, "Operands must be numbers or strings");
+      case SLASH:
+        Interpreter.verifyNumberOperands(exp.operator, left, right);
+        return (double) left / (double) right;
+      case STAR:
+        Interpreter.verifyNumberOperands(exp.operator, left, right);
+        return (double) left * (double) right;
+      default:
+        return null;
+    }
+  }
+}
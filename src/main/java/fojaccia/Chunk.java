@@ -0,0 +1,59 @@
+package fojaccia;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A function's bytecode plus its constant pool. Every byte of code has a
+ * matching source line so runtime errors can point at the right place.
+ */
+final class Chunk {
+  private byte[] code = new byte[64];
+  private int[] lines = new int[64];
+  private int count = 0;
+  private final List<Object> constants = new ArrayList<>();
+  private final Map<Object, Integer> constantIndexes = new HashMap<>();
+
+  void write(int value, int line) {
+    if (count == code.length) {
+      code = Arrays.copyOf(code, count * 2);
+      lines = Arrays.copyOf(lines, count * 2);
+    }
+    code[count] = (byte) value;
+    lines[count] = line;
+    count++;
+  }
+
+  void patch(int offset, int value) {
+    code[offset] = (byte) value;
+  }
+
+  int addConstant(Object value) {
+    Integer index = constantIndexes.get(value);
+    if (index != null) {
+      return index;
+    }
+    constants.add(value);
+    constantIndexes.put(value, constants.size() - 1);
+    return constants.size() - 1;
+  }
+
+  int count() {
+    return count;
+  }
+
+  byte[] code() {
+    return Arrays.copyOf(code, count);
+  }
+
+  int[] lines() {
+    return Arrays.copyOf(lines, count);
+  }
+
+  Object[] constants() {
+    return constants.toArray();
+  }
+}
@@ -0,0 +1,388 @@
+package fojaccia;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Just enough of a class file writer for the Jit: a constant pool, methods
+ * with code, and forward jumps patched once their target is placed.
+ *
+ * Classes are written as version 49 so the verifier infers types itself and
+ * no stack map frames are needed.
+ */
+final class ClassAssembler {
+  private static final int VERSION = 49;
+
+  static final int ACC_PUBLIC = 0x0001;
+  static final int ACC_STATIC = 0x0008;
+  static final int ACC_FINAL = 0x0010;
+  static final int ACC_SUPER = 0x0020;
+
+  private final String name;
+  private final String superName;
+  private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+  private final DataOutputStream poolOut = new DataOutputStream(pool);
+  private final Map<String, Integer> poolIndexes = new HashMap<>();
+  private int poolCount = 1;
+  private final List<Code> methods = new ArrayList<>();
+
+  ClassAssembler(String name, String superName) {
+    this.name = name;
+    this.superName = superName;
+  }
+
+  String name() {
+    return name;
+  }
+
+  Code method(int access, String methodName, String descriptor, int argumentSlots) {
+    Code code = new Code(access, utf8(methodName), utf8(descriptor), argumentSlots);
+    methods.add(code);
+    return code;
+  }
+
+  byte[] toByteArray() {
+    int thisClass = classRef(name);
+    int superClass = classRef(superName);
+    int codeName = utf8("Code");
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    try {
+      out.writeInt(0xCAFEBABE);
+      out.writeShort(0);
+      out.writeShort(VERSION);
+      out.writeShort(poolCount);
+      pool.writeTo(out);
+      out.writeShort(ACC_FINAL | ACC_SUPER);
+      out.writeShort(thisClass);
+      out.writeShort(superClass);
+      out.writeShort(0); // interfaces
+      out.writeShort(0); // fields
+      out.writeShort(methods.size());
+      for (Code method : methods) {
+        method.writeTo(out, codeName);
+      }
+      out.writeShort(0); // attributes
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return bytes.toByteArray();
+  }
+
+  int classRef(String internalName) {
+    return entry("C" + internalName, 7, utf8(internalName), -1);
+  }
+
+  int methodRef(String owner, String methodName, String descriptor) {
+    int nameAndType = entry("N" + methodName + ":" + descriptor, 12, utf8(methodName), utf8(descriptor));
+    return entry("M" + owner + "." + methodName + ":" + descriptor, 10, classRef(owner), nameAndType);
+  }
+
+  int fieldRef(String owner, String fieldName, String descriptor) {
+    int nameAndType = entry("N" + fieldName + ":" + descriptor, 12, utf8(fieldName), utf8(descriptor));
+    return entry("F" + owner + "." + fieldName + ":" + descriptor, 9, classRef(owner), nameAndType);
+  }
+
+  int stringConstant(String value) {
+    return entry("S" + value, 8, utf8(value), -1);
+  }
+
+  int doubleConstant(double value) {
+    String key = "D" + Double.doubleToRawLongBits(value);
+    Integer index = poolIndexes.get(key);
+    if (index != null)
+      return index;
+    try {
+      poolOut.writeByte(6);
+      poolOut.writeDouble(value);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    poolIndexes.put(key, poolCount);
+    poolCount += 2; // doubles take up two entries
+    return poolCount - 2;
+  }
+
+  private int utf8(String value) {
+    Integer index = poolIndexes.get("U" + value);
+    if (index != null)
+      return index;
+    try {
+      poolOut.writeByte(1);
+      poolOut.writeUTF(value);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    poolIndexes.put("U" + value, poolCount);
+    return poolCount++;
+  }
+
+  private int entry(String key, int tag, int first, int second) {
+    Integer index = poolIndexes.get(key);
+    if (index != null)
+      return index;
+    try {
+      poolOut.writeByte(tag);
+      poolOut.writeShort(first);
+      if (second != -1) {
+        poolOut.writeShort(second);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    poolIndexes.put(key, poolCount);
+    return poolCount++;
+  }
+
+  /**
+   * A position in the code that jumps can target before it's been placed.
+   * It remembers the stack depth jumps arrive with, so code placed after an
+   * unconditional jump picks up where they left off.
+   */
+  static final class Label {
+    private int position = -1;
+    private int stack = -1;
+    private final List<Integer> fixups = new ArrayList<>();
+
+    /**
+     * Whether anything has jumped here yet.
+     */
+    boolean used() {
+      return !fixups.isEmpty();
+    }
+  }
+
+  /**
+   * The body of one method. Keeps track of the operand stack depth as
+   * instructions go in, so max_stack comes out right.
+   */
+  final class Code {
+    private final int access;
+    private final int nameIndex;
+    private final int descriptorIndex;
+    private byte[] code = new byte[128];
+    private int count = 0;
+    private int stack = 0;
+    private int maxStack = 0;
+    private int locals;
+    private int maxLocals;
+
+    private Code(int access, int nameIndex, int descriptorIndex, int argumentSlots) {
+      this.access = access;
+      this.nameIndex = nameIndex;
+      this.descriptorIndex = descriptorIndex;
+      this.locals = argumentSlots;
+      this.maxLocals = argumentSlots;
+    }
+
+    /**
+     * Reserves local variable slots (two for a double) and returns the first.
+     */
+    int newLocal(int size) {
+      int index = locals;
+      locals += size;
+      maxLocals = Math.max(maxLocals, locals);
+      return index;
+    }
+
+    /**
+     * Emits an instruction without operands that changes the stack depth by
+     * {@code effect}.
+     */
+    void op(int opcode, int effect) {
+      write(opcode);
+      adjust(effect);
+    }
+
+    void local(int opcode, int index, int effect) {
+      if (index > 255) {
+        write(Opcodes.WIDE);
+        write(opcode);
+        writeShort(index);
+      } else {
+        write(opcode);
+        write(index);
+      }
+      adjust(effect);
+    }
+
+    void intConstant(int value) {
+      if (value >= -1 && value <= 5) {
+        op(Opcodes.ICONST_0 + value, 1);
+      } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+        write(Opcodes.BIPUSH);
+        write(value);
+        adjust(1);
+      } else {
+        write(Opcodes.SIPUSH);
+        writeShort(value);
+        adjust(1);
+      }
+    }
+
+    void doubleConstant(double value) {
+      if (Double.doubleToRawLongBits(value) == 0L) {
+        op(Opcodes.DCONST_0, 2);
+      } else if (value == 1.0) {
+        op(Opcodes.DCONST_1, 2);
+      } else {
+        write(Opcodes.LDC2_W);
+        writeShort(ClassAssembler.this.doubleConstant(value));
+        adjust(2);
+      }
+    }
+
+    void stringConstant(String value) {
+      int index = ClassAssembler.this.stringConstant(value);
+      if (index > 255) {
+        write(Opcodes.LDC_W);
+        writeShort(index);
+      } else {
+        write(Opcodes.LDC);
+        write(index);
+      }
+      adjust(1);
+    }
+
+    void getStatic(String owner, String fieldName, String descriptor, int effect) {
+      write(Opcodes.GETSTATIC);
+      writeShort(fieldRef(owner, fieldName, descriptor));
+      adjust(effect);
+    }
+
+    /**
+     * Emits an invoke; {@code effect} is what the call does to the stack,
+     * arguments popped and result pushed.
+     */
+    void invoke(int opcode, String owner, String methodName, String descriptor, int effect) {
+      write(opcode);
+      writeShort(methodRef(owner, methodName, descriptor));
+      adjust(effect);
+    }
+
+    void jump(int opcode, Label target, int effect) {
+      adjust(effect);
+      target.stack = stack;
+      if (target.position >= 0) {
+        int from = count;
+        write(opcode);
+        writeShort(target.position - from);
+      } else {
+        target.fixups.add(count);
+        write(opcode);
+        writeShort(0);
+      }
+    }
+
+    void place(Label label) {
+      label.position = count;
+      if (label.stack >= 0) {
+        stack = label.stack;
+      }
+      label.stack = stack;
+      for (int from : label.fixups) {
+        int offset = count - from;
+        code[from + 1] = (byte) (offset >> 8);
+        code[from + 2] = (byte) offset;
+      }
+    }
+
+    int size() {
+      return count;
+    }
+
+    private void adjust(int effect) {
+      stack += effect;
+      maxStack = Math.max(maxStack, stack);
+    }
+
+    private void write(int value) {
+      if (count == code.length) {
+        code = Arrays.copyOf(code, count * 2);
+      }
+      code[count++] = (byte) value;
+    }
+
+    private void writeShort(int value) {
+      write(value >> 8);
+      write(value);
+    }
+
+    private void writeTo(DataOutputStream out, int codeName) throws IOException {
+      out.writeShort(access);
+      out.writeShort(nameIndex);
+      out.writeShort(descriptorIndex);
+      out.writeShort(1);
+      out.writeShort(codeName);
+      out.writeInt(12 + count);
+      out.writeShort(maxStack);
+      out.writeShort(maxLocals);
+      out.writeInt(count);
+      out.write(code, 0, count);
+      out.writeShort(0); // exception table
+      out.writeShort(0); // attributes
+    }
+  }
+
+  /**
+   * The JVM opcodes the Jit uses.
+   */
+  static final class Opcodes {
+    static final int ICONST_0 = 0x03;
+    static final int ICONST_1 = 0x04;
+    static final int DCONST_0 = 0x0e;
+    static final int DCONST_1 = 0x0f;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC = 0x12;
+    static final int LDC_W = 0x13;
+    static final int LDC2_W = 0x14;
+    static final int ILOAD = 0x15;
+    static final int DLOAD = 0x18;
+    static final int ALOAD = 0x19;
+    static final int ISTORE = 0x36;
+    static final int DSTORE = 0x39;
+    static final int ASTORE = 0x3a;
+    static final int POP = 0x57;
+    static final int POP2 = 0x58;
+    static final int DUP = 0x59;
+    static final int DUP2 = 0x5c;
+    static final int DADD = 0x63;
+    static final int DSUB = 0x67;
+    static final int DMUL = 0x6b;
+    static final int DDIV = 0x6f;
+    static final int DNEG = 0x77;
+    static final int IXOR = 0x82;
+    static final int DCMPL = 0x97;
+    static final int DCMPG = 0x98;
+    static final int IFEQ = 0x99;
+    static final int IFNE = 0x9a;
+    static final int IFLT = 0x9b;
+    static final int IFGE = 0x9c;
+    static final int IFGT = 0x9d;
+    static final int IFLE = 0x9e;
+    static final int IF_ICMPEQ = 0x9f;
+    static final int IF_ICMPNE = 0xa0;
+    static final int GOTO = 0xa7;
+    static final int IRETURN = 0xac;
+    static final int DRETURN = 0xaf;
+    static final int ARETURN = 0xb0;
+    static final int RETURN = 0xb1;
+    static final int GETSTATIC = 0xb2;
+    static final int INVOKEVIRTUAL = 0xb6;
+    static final int INVOKESPECIAL = 0xb7;
+    static final int INVOKESTATIC = 0xb8;
+    static final int WIDE = 0xc4;
+
+    private Opcodes() {
+    }
+  }
+}
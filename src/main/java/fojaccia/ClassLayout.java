@@ -0,0 +1,53 @@
+package fojaccia;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Where each method lives in the table of a class made from a given
+ * declaration with a given superclass. A subclass keeps its superclass's
+ * indexes, overriding in place and adding its own methods after them.
+ *
+ * Running a class declaration again, in the same run or another, makes a new
+ * FojClass with new closures, but the same layout, so a call site that
+ * caches the layout and an index keeps hitting across all of them. Layouts
+ * are kept on the declaration, keyed by the superclass's layout, and go
+ * away along with the tree.
+ */
+final class ClassLayout {
+  // The superclass of classes without one
+  static final ClassLayout NONE = new ClassLayout(Map.of());
+
+  private final Map<String, Integer> indexes;
+
+  private ClassLayout(Map<String, Integer> indexes) {
+    this.indexes = indexes;
+  }
+
+  /**
+   * The layout of the classes the declaration makes from a superclass laid
+   * out like {@code superclass}.
+   */
+  static ClassLayout of(Stmt.Class declaration, ClassLayout superclass) {
+    return declaration.layouts.computeIfAbsent(superclass, inherited -> {
+      Map<String, Integer> indexes = new HashMap<>(inherited.indexes);
+      for (Stmt.Function method : declaration.methods) {
+        indexes.putIfAbsent(method.name.lexeme, indexes.size());
+      }
+      return new ClassLayout(indexes);
+    });
+  }
+
+  int size() {
+    return indexes.size();
+  }
+
+  /**
+   * Returns the method's index, or -1 if classes laid out like this don't
+   * have it.
+   */
+  int indexOf(String name) {
+    Integer index = indexes.get(name);
+    return index == null ? -1 : index;
+  }
+}
@@ -0,0 +1,19 @@
+package fojaccia;
+
+final class Closure {
+  final CompiledFunction function;
+  final Scope scope;
+  // Each closure of a `memo fn` gets its own cache
+  final MemoCache memo;
+
+  Closure(CompiledFunction function, Scope scope) {
+    this.function = function;
+    this.scope = scope;
+    this.memo = function.memoized ? new MemoCache() : null;
+  }
+
+  @Override
+  public String toString() {
+    return function.toString();
+  }
+}
@@ -0,0 +1,20 @@
+package fojaccia;
+
+import java.util.List;
+
+/**
+ * Thrown when a Program can't be compiled, with every error found in it and
+ * in what it imports, formatted as the command line reports them.
+ */
+public class CompileError extends RuntimeException {
+  private final List<String> errors;
+
+  CompileError(List<String> errors) {
+    super(String.join("\n", errors));
+    this.errors = List.copyOf(errors);
+  }
+
+  public List<String> errors() {
+    return errors;
+  }
+}
@@ -0,0 +1,33 @@
+package fojaccia;
+
+/**
+ * The compiled, immutable form of a function declaration. The top-level
+ * script is compiled into one of these as well.
+ */
+final class CompiledFunction {
+  final String name;
+  final int arity;
+  final int scopeSize;
+  final boolean isInitializer;
+  final boolean memoized;
+  final byte[] code;
+  final int[] lines;
+  final Object[] constants;
+
+  CompiledFunction(String name, int arity, int scopeSize, boolean isInitializer,
+      boolean memoized, Chunk chunk) {
+    this.name = name;
+    this.arity = arity;
+    this.scopeSize = scopeSize;
+    this.isInitializer = isInitializer;
+    this.memoized = memoized;
+    this.code = chunk.code();
+    this.lines = chunk.lines();
+    this.constants = chunk.constants();
+  }
+
+  @Override
+  public String toString() {
+    return "<fn " + name + ">";
+  }
+}
@@ -0,0 +1,91 @@
+package fojaccia;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.Map;
+
+/**
+ * Somewhere to run Programs: an interpreter with globals of its own, its
+ * own record of which modules have run, and its own output. Programs run
+ * one after another in the same Context share globals, the way lines at
+ * the REPL do.
+ *
+ * A Context is for one thread at a time, but Contexts are independent of
+ * each other, so any number of them can run side by side (see ContextPool).
+ *
+ * Values going in and out are as scripts see them: Double, String, Boolean,
+ * null, or something a script made.
+ */
+public final class Context {
+  private final Interpreter interpreter;
+
+  public Context() {
+    this(System.out);
+  }
+
+  public Context(PrintStream out) {
+    this.interpreter = new Interpreter(out, false);
+  }
+
+  /**
+   * Runs the program in this Context's globals, throwing the RuntimeError
+   * that stops it, if one does. What it did up to then stays done.
+   */
+  public void run(Program program) {
+    if (program.module != null) {
+      // A module importing it back shouldn't run it again
+      interpreter.markImported(program.module);
+    }
+    interpreter.run(program.statements, program.modules);
+  }
+
+  /**
+   * The global's value, or null if it isn't defined.
+   */
+  public Object get(String name) {
+    return interpreter.globals.peek(name);
+  }
+
+  public void define(String name, Object value) {
+    interpreter.globals.define(name, value);
+  }
+
+  /**
+   * A copy of every global, natives included, as they stand.
+   */
+  public Map<String, Object> globals() {
+    return interpreter.globals.values();
+  }
+
+  /**
+   * Where `print` goes from now on.
+   */
+  public void output(PrintStream out) {
+    interpreter.output(out::println);
+  }
+
+  /**
+   * Where `print` goes from now on, a line at a time, flushed after each.
+   */
+  public void output(Writer out) {
+    interpreter.output(line -> {
+      try {
+        out.write(line);
+        out.write(System.lineSeparator());
+        out.flush();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    });
+  }
+
+  /**
+   * Forgets every global and every module that has run, so the Context can
+   * be used again as if it were new.
+   */
+  public void reset() {
+    interpreter.reset();
+  }
+}
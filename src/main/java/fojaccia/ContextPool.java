@@ -0,0 +1,62 @@
+package fojaccia;
+
+import java.io.PrintStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs Programs concurrently, each on a virtual thread of its own, in
+ * Contexts that are kept and reused rather than made for every run. A run
+ * borrows a Context, waiting for one if they're all busy, and hands it back
+ * reset, so no run sees another's globals.
+ */
+public final class ContextPool implements AutoCloseable {
+  private final BlockingQueue<Context> idle;
+  private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+  /**
+   * A pool of as many Contexts as can run at once.
+   */
+  public ContextPool(int size) {
+    this.idle = new ArrayBlockingQueue<>(size);
+    for (int i = 0; i < size; i++) {
+      idle.add(new Context());
+    }
+  }
+
+  /**
+   * Starts the program running on a virtual thread, printing to the stream.
+   * The future fails with the RuntimeError that stopped it, if one did.
+   */
+  public Future<Void> submit(Program program, PrintStream out) {
+    return executor.submit(() -> {
+      run(program, out);
+      return null;
+    });
+  }
+
+  /**
+   * Runs the program on this thread, in the next free Context.
+   */
+  public void run(Program program, PrintStream out) throws InterruptedException {
+    Context context = idle.take();
+    try {
+      context.output(out);
+      context.run(program);
+    } finally {
+      context.reset();
+      idle.add(context);
+    }
+  }
+
+  /**
+   * Waits for every run that's been submitted to finish.
+   */
+  @Override
+  public void close() {
+    executor.close();
+  }
+}
@@ -1,61 +1,304 @@
 package fojaccia;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import fojaccia.Fojaccia.LogLevel;
 
+/**
+ * Globals live in a name-keyed map since they can be declared at any point
+ * (and redeclared at the REPL). Every other scope is a fixed-size array of
+ * slots, indexed by the positions the Resolver hands out.
+ *
+ * A number computed on the unboxed path is stored in a parallel double array
+ * and its object slot is tagged, so it only gets boxed if something reads it
+ * generically. Globals do the same within their cells.
+ *
+ * Tasks started with `spawn` share the globals and whatever scopes the
+ * function they run closes over. Each global is a cell in the map, so
+ * assigning one only stores into the cell. Tasks only run functions, so
+ * new globals only ever come from the top level; once the globals are
+ * shared, adding one publishes a copy of the map rather than changing the
+ * one tasks are reading. Slots aren't locked: a reference store can't
+ * tear, and making the number array is done under the scope's lock while
+ * there are tasks. A tag is stored with release semantics after its
+ * number, and a read that finds a tag is followed by an acquire fence
+ * before the number is read, so a task that sees the tag sees that number
+ * or a later one. Other values need no ordering, so they're read plainly.
+ * Which of two unsynchronized writes to a variable another task sees is up
+ * to the threads; spawning and channels are what order them (see Tasks and
+ * FojChannel).
+ */
 public class Environment {
+  private static final Object UNBOXED = new Object();
+  private static final VarHandle SLOT = MethodHandles.arrayElementVarHandle(Object[].class);
+  private static final VarHandle VALUE;
+
+  static {
+    try {
+      VALUE = MethodHandles.lookup().findVarHandle(Global.class, "value", Object.class);
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
   final Environment enclosing;
-  private final Map<String, Object> values = new HashMap<>();
+  private volatile Map<String, Global> values;
+  // Set while tasks spawned with these globals are running
+  private volatile boolean shared = false;
+  private final Object[] slots;
+  // Stored before the first tag in `slots`, so whoever sees a tag sees them
+  private double[] numbers;
+  // Bumped whenever a global starts or stops referring to a function, so
+  // compiled code can tell cheaply that the functions it calls haven't
+  // changed. Only the globals have one.
+  private final AtomicInteger version;
+
+  // A global's value, which stays put however often it changes
+  private static final class Global {
+    // Tagged through VALUE, after `number` is stored
+    Object value;
+    // The value while `value` is UNBOXED
+    double number;
+    boolean constant;
+
+    Object boxed() {
+      Object value = this.value;
+      if (value != UNBOXED)
+        return value;
+      VarHandle.acquireFence();
+      return number;
+    }
+  }
 
   Environment() {
     this.enclosing = null;
+    this.values = new HashMap<>();
+    this.slots = null;
+    this.version = new AtomicInteger();
   }
 
-  Environment(Environment enclosing) {
+  Environment(Environment enclosing, int size) {
     this.enclosing = enclosing;
+    this.values = null;
+    this.slots = new Object[size];
+    this.version = null;
   }
 
   void define(String name, Object value) {
-    Fojaccia.Log(LogLevel.DEBUG, "defining token with lexeme: " + name + ", value: " + value);
-    values.put(name, value);
+    if (Fojaccia.isLoggable(LogLevel.DEBUG)) {
+      Fojaccia.Log(LogLevel.DEBUG, "defining token with lexeme: " + name + ", value: " + value);
+    }
+    Global global = values.get(name);
+    if (global == null) {
+      global = new Global();
+      if (shared) {
+        Map<String, Global> copy = new HashMap<>(values);
+        copy.put(name, global);
+        values = copy;
+      } else {
+        values.put(name, global);
+      }
+    }
+    Object previous = global.value;
+    global.value = value;
+    changed(previous, value);
   }
 
-  void assign(Token name, Object value) {
-    Fojaccia.Log(LogLevel.DEBUG, "assigning token with lexeme: " + name.lexeme + ", value: " + value);
+  /**
+   * Defines a global from a declaration, checking it against the constants
+   * defined so far. The Resolver does the same within one tree, but REPL
+   * lines and modules are each resolved on their own.
+   */
+  void define(Token name, Object value, boolean constant) {
+    Global global = values.get(name.lexeme);
+    if (global != null && global.constant)
+      throw new RuntimeError(name, "Constant name already exists");
+    define(name.lexeme, value);
+    if (constant) {
+      values.get(name.lexeme).constant = true;
+    }
+  }
 
-    if (values.containsKey(name.lexeme)) {
-      values.put(name.lexeme, value);
-      return;
+  /**
+   * Drops every global. The version keeps counting up, so nothing compiled
+   * against what was here before can mistake the new globals for the old.
+   */
+  void clear() {
+    values = new HashMap<>();
+    shared = false;
+    version.incrementAndGet();
+  }
+
+  /**
+   * From now on, tasks may be reading the globals. Called before a task is
+   * started, by the thread starting it.
+   */
+  void share() {
+    shared = true;
+  }
+
+  /**
+   * Every task spawned with the globals has finished, leaving only the
+   * thread that waited for them.
+   */
+  void unshare() {
+    shared = false;
+  }
+
+  /**
+   * Whether tasks may be sharing this scope, which they can only be while
+   * they're sharing the globals it leads back to.
+   */
+  boolean shared() {
+    Environment globals = this;
+    while (globals.enclosing != null) {
+      globals = globals.enclosing;
     }
+    return globals.shared;
+  }
 
-    if (enclosing != null) {
-      enclosing.assign(name, value);
-      return;
+  void define(int slot, Object value) {
+    slots[slot] = value;
+  }
+
+  void defineNumber(int slot, double value) {
+    double[] numbers = this.numbers;
+    if (numbers == null) {
+      numbers = makeNumbers();
     }
+    numbers[slot] = value;
+    SLOT.setRelease(slots, slot, UNBOXED);
+  }
 
-    throw new RuntimeError(name, "Undefined variable: " + name.lexeme);
+  /**
+   * Two tasks storing the first number in a scope they share both end up
+   * with the same array.
+   */
+  private double[] makeNumbers() {
+    if (!shared())
+      return numbers = new double[slots.length];
+    synchronized (this) {
+      if (numbers == null) {
+        numbers = new double[slots.length];
+      }
+      return numbers;
+    }
   }
 
-  void assignAt(int distance, Token name, Object value) {
-    ancestor(distance).values.put(name.lexeme, value);
+  /**
+   * The slot's value, or its tag, after which its number can be read.
+   */
+  private Object slot(int slot) {
+    Object value = slots[slot];
+    if (value == UNBOXED) {
+      VarHandle.acquireFence();
+    }
+    return value;
+  }
+
+  void assign(Token name, Object value) {
+    if (Fojaccia.isLoggable(LogLevel.DEBUG)) {
+      Fojaccia.Log(LogLevel.DEBUG, "assigning token with lexeme: " + name.lexeme + ", value: " + value);
+    }
+
+    Global global = assignable(name);
+    Object previous = global.value;
+    global.value = value;
+    changed(previous, value);
+  }
+
+  void assignNumber(Token name, double value) {
+    Global global = assignable(name);
+    Object previous = global.value;
+    global.number = value;
+    VALUE.setRelease(global, UNBOXED);
+    changed(previous, UNBOXED);
+  }
+
+  void assignAt(int distance, int slot, Object value) {
+    ancestor(distance).slots[slot] = value;
+  }
+
+  void assignNumberAt(int distance, int slot, double value) {
+    ancestor(distance).defineNumber(slot, value);
   }
 
   Object get(Token name) {
-    Fojaccia.Log(LogLevel.DEBUG, "getting token with lexeme: " + name.lexeme);
-    if (values.containsKey(name.lexeme)) {
-      return values.get(name.lexeme);
+    if (Fojaccia.isLoggable(LogLevel.DEBUG)) {
+      Fojaccia.Log(LogLevel.DEBUG, "getting token with lexeme: " + name.lexeme);
+    }
+    return global(name).boxed();
+  }
+
+  double getNumber(Token name) {
+    Global global = global(name);
+    Object value = global.value;
+    if (value == UNBOXED) {
+      VarHandle.acquireFence();
+      return global.number;
     }
+    return Interpreter.expectNumber(value);
+  }
 
-    if (enclosing != null)
-      return enclosing.get(name);
+  private Global global(Token name) {
+    Global global = values.get(name.lexeme);
+    if (global == null)
+      throw new RuntimeError(name, "Undefined variable: " + name.lexeme);
+    return global;
+  }
+
+  private Global assignable(Token name) {
+    Global global = global(name);
+    if (global.constant)
+      throw new RuntimeError(name, "Can't assign to a constant");
+    return global;
+  }
+
+  /**
+   * A global's value, or null if it isn't defined.
+   */
+  Object peek(String name) {
+    Global global = values.get(name);
+    return global == null ? null : global.boxed();
+  }
+
+  /**
+   * A copy of every global.
+   */
+  Map<String, Object> values() {
+    Map<String, Object> copy = new HashMap<>();
+    values.forEach((name, global) -> copy.put(name, global.boxed()));
+    return copy;
+  }
 
-    throw new RuntimeError(name, "Undefined variable: " + name.lexeme);
+  int version() {
+    return version.get();
   }
 
-  Object getAt(int distance, String name) {
-    return ancestor(distance).values.get(name);
+  private void changed(Object previous, Object value) {
+    // Compiled code only depends on which functions globals refer to
+    if (previous instanceof FojFunction || value instanceof FojFunction) {
+      version.incrementAndGet();
+    }
+  }
+
+  Object getAt(int distance, int slot) {
+    Environment environment = ancestor(distance);
+    Object value = environment.slot(slot);
+    return value == UNBOXED ? (Object) environment.numbers[slot] : value;
+  }
+
+  double getNumberAt(int distance, int slot) {
+    Environment environment = ancestor(distance);
+    Object value = environment.slot(slot);
+    if (value == UNBOXED) {
+      return environment.numbers[slot];
+    }
+    return Interpreter.expectNumber(value);
   }
 
   Environment ancestor(int distance) {
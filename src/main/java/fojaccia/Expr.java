@@ -2,7 +2,7 @@ package fojaccia;
 
 import java.util.List;
 
-abstract class Expr {
+public abstract class Expr {
 
   private Expr() {
     // Private constructor to prevent instantiation
@@ -36,9 +36,23 @@ abstract class Expr {
 
   abstract <R> R accept(Visitor<R> visitor);
 
-  public static class Super extends Expr {
+  /**
+   * An expression that refers to a variable by name. The Resolver fills in
+   * where the variable lives so the Interpreter can go straight to its slot.
+   */
+  abstract static class Reference extends Expr {
+    // Scopes to walk up from the current environment; -1 for globals
+    int depth = -1;
+    int slot;
+  }
+
+  public static class Super extends Reference {
     final Token keyword;
     final Token method;
+    // Filled in by the Resolver: position in the class's superMethods
+    int index;
+    // And where `this` is in the frame of the method it's in
+    int receiver;
 
     Super(Token keyword, Token method) {
       this.keyword = keyword;
@@ -49,7 +63,7 @@ abstract class Expr {
     <R> R accept(Visitor<R> visitor) { return visitor.visitSuper(this); }
   }
 
-  public static class This extends Expr {
+  public static class This extends Reference {
     final Token keyword;
 
     This(Token keyword) {
@@ -64,6 +78,8 @@ abstract class Expr {
     final Expr object;
     final Token name;
     final Expr value;
+    // Filled in by the Interpreter with the last shape stored into here
+    FieldCache cache;
 
     Set(Expr object, Token name, Expr value) {
       this.object = object;
@@ -80,6 +96,8 @@ abstract class Expr {
   public static class Get extends Expr {
     final Expr object;
     final Token name;
+    // Filled in by the Interpreter with the last shape read from here
+    FieldCache cache;
 
     Get(Expr object, Token name) {
       this.object = object;
@@ -92,7 +110,7 @@ abstract class Expr {
     }
   }
 
-  public static class Assignment extends Expr {
+  public static class Assignment extends Reference {
     final Token name;
     final Expr value;
 
@@ -111,6 +129,8 @@ abstract class Expr {
     final Expr left;
     final Token operator;
     final Expr right;
+    // Rewritten by the Interpreter as it observes operand types
+    BinaryNode node = BinaryNode.UNINITIALIZED;
 
     Binary(Expr left, Token operator, Expr right) {
       this.left = left;
@@ -127,6 +147,8 @@ abstract class Expr {
   public static class Unary extends Expr {
     final Token operator;
     final Expr right;
+    // Rewritten by the Interpreter as it observes operand types
+    UnaryNode node = UnaryNode.UNINITIALIZED;
 
     public Unary(Token operator, Expr right) {
       this.operator = operator;
@@ -143,6 +165,8 @@ abstract class Expr {
     Expr callee;
     Token paren;
     List<Expr> arguments;
+    // Filled in by the Interpreter when the callee is a method on an instance
+    MethodCache methods;
 
     public Call(Expr callee, Token paren, List<Expr> arguments) {
       this.callee = callee;
@@ -186,6 +210,8 @@ abstract class Expr {
     final Expr left;
     final Token operator;
     final Expr right;
+    // Rewritten by the Interpreter as it observes operand types
+    LogicalNode node = LogicalNode.UNINITIALIZED;
 
     public Logical(Expr left, Token operator, Expr right) {
       this.left = left;
@@ -199,8 +225,10 @@ abstract class Expr {
     }
   }
 
-  public static class Variable extends Expr {
+  public static class Variable extends Reference {
     final Token name;
+    // Filled in by the Resolver when the variable is a const
+    Stmt.Var constant;
 
     public Variable(Token name) {
       this.name = name;
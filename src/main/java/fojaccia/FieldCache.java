@@ -0,0 +1,21 @@
+package fojaccia;
+
+/**
+ * What a Get or Set site saw last: for instances of {@code shape}, the field
+ * is at {@code offset}. A Set that added the field also records the shape the
+ * instance moved to, so the next instance can take the same transition
+ * without looking it up; otherwise {@code next} is the same as {@code shape}.
+ *
+ * Immutable, so a site can swap its cache with a single write.
+ */
+final class FieldCache {
+  final Shape shape;
+  final int offset;
+  final Shape next;
+
+  FieldCache(Shape shape, int offset, Shape next) {
+    this.shape = shape;
+    this.offset = offset;
+    this.next = next;
+  }
+}
@@ -0,0 +1,102 @@
+package fojaccia;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+
+/**
+ * A channel between tasks, made by the native `channel(capacity)`. With a
+ * capacity of 0, `send(channel, value)` waits until another task takes the
+ * value with `receive(channel)`; with more, it only waits while that many
+ * values are queued up. `receive` waits until there's a value.
+ *
+ * Everything a task did before sending a value is visible to the task that
+ * receives it, so a channel is also how tasks safely hand each other
+ * instances and anything else they go on to share.
+ */
+final class FojChannel {
+  // Stands in for null, which a queue can't hold
+  private static final Object NIL = new Object();
+
+  private final BlockingQueue<Object> queue;
+
+  private FojChannel(int capacity) {
+    this.queue = capacity == 0 ? new SynchronousQueue<>() : new ArrayBlockingQueue<>(capacity);
+  }
+
+  /**
+   * Defines `channel`, `send` and `receive`.
+   */
+  static void defineNatives(Environment globals) {
+    globals.define(Interpreter.NATIVE_CHANNEL, new Native(1) {
+      @Override
+      public Object call1(Interpreter interpreter, Object capacity) {
+        if (!(capacity instanceof Double number) || number < 0 || number != Math.floor(number)
+            || number > Integer.MAX_VALUE) {
+          throw new NativeError("Channel capacity must be a whole number, 0 or more");
+        }
+        return new FojChannel(number.intValue());
+      }
+    });
+
+    globals.define(Interpreter.NATIVE_SEND, new Native(2) {
+      @Override
+      public Object call2(Interpreter interpreter, Object channel, Object value) {
+        try {
+          channel(channel).queue.put(value == null ? NIL : value);
+        } catch (InterruptedException e) {
+          throw new NativeError("Interrupted while sending");
+        }
+        return null;
+      }
+    });
+
+    globals.define(Interpreter.NATIVE_RECEIVE, new Native(1) {
+      @Override
+      public Object call1(Interpreter interpreter, Object channel) {
+        Object value;
+        try {
+          value = channel(channel).queue.take();
+        } catch (InterruptedException e) {
+          throw new NativeError("Interrupted while receiving");
+        }
+        return value == NIL ? null : value;
+      }
+    });
+  }
+
+  private static FojChannel channel(Object value) {
+    if (value instanceof FojChannel channel)
+      return channel;
+    throw new NativeError("Operand must be a channel");
+  }
+
+  @Override
+  public String toString() {
+    return "<channel>";
+  }
+
+  private abstract static class Native implements FojCallable {
+    private final int arity;
+
+    Native(int arity) {
+      this.arity = arity;
+    }
+
+    @Override
+    public int arity() {
+      return arity;
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, Object[] arguments) {
+      return arity == 1 ? call1(interpreter, arguments[0])
+          : call2(interpreter, arguments[0], arguments[1]);
+    }
+
+    @Override
+    public String toString() {
+      return "<native function>";
+    }
+  }
+}
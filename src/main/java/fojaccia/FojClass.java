@@ -1,46 +1,89 @@
 package fojaccia;
 
 import java.util.List;
-import java.util.Map;
 
+/**
+ * Inherited methods are copied down into each class's table when the class is
+ * created, so a lookup is a single probe no matter how deep the hierarchy is.
+ * The table is laid out by a ClassLayout, which call sites cache instead of
+ * the class. Classes never change afterwards, which also lets the initializer
+ * and the targets of `super` calls be looked up once up front.
+ */
 class FojClass implements FojCallable {
   final String name;
   final FojClass superclass;
-  private final Map<String, FojFunction> methods;
+  final ClassLayout layout;
+  private final FojFunction[] methods;
+  private final FojFunction initializer;
+  private final int arity;
+  // Indexed by Expr.Super.index; null where the superclass has no such method
+  private final FojFunction[] superMethods;
+  // Most fields any instance has ended up with; sizes new instances
+  int fieldCount = 0;
+  // Whose tasks its instances can be shared between
+  final Environment globals;
 
-  FojClass(String name, FojClass superclass, Map<String, FojFunction> methods) {
+  /**
+   * A class laid out like {@code layout}, with {@code methods} the functions
+   * the declaration's methods make, in the order it declares them.
+   */
+  FojClass(String name, FojClass superclass, ClassLayout layout, List<FojFunction> methods,
+      List<String> superMethodNames, Environment globals) {
     this.name = name;
     this.superclass = superclass;
-    this.methods = methods;
+    this.layout = layout;
+    this.globals = globals;
+
+    this.methods = new FojFunction[layout.size()];
+    if (superclass != null) {
+      System.arraycopy(superclass.methods, 0, this.methods, 0, superclass.methods.length);
+    }
+    for (FojFunction method : methods) {
+      this.methods[layout.indexOf(method.declaration().name.lexeme)] = method;
+    }
+
+    this.initializer = findMethod("init");
+    this.arity = initializer == null ? 0 : initializer.arity();
+
+    this.superMethods = new FojFunction[superMethodNames.size()];
+    for (int i = 0; i < superMethods.length; i++) {
+      superMethods[i] = superclass.findMethod(superMethodNames.get(i));
+    }
   }
 
   @Override
-  public Object call(Interpreter interpreter, List<Object> arguments) {
+  public Object call(Interpreter interpreter, Object[] arguments) {
     FojInstance instance = new FojInstance(this);
-    FojFunction initializer = findMethod("init");
     if (initializer != null) {
-      initializer.bind(instance).call(interpreter, arguments);
+      Environment frame = initializer.frame(instance);
+      for (int i = 0; i < arguments.length; i++) {
+        frame.define(i, arguments[i]);
+      }
+      initializer.execute(interpreter, frame);
     }
     return instance;
   }
 
+  FojFunction initializer() {
+    return initializer;
+  }
+
   FojFunction findMethod(String name) {
-    if (methods.containsKey(name)) {
-      return methods.get(name);
-    }
+    int index = layout.indexOf(name);
+    return index == -1 ? null : methods[index];
+  }
 
-    if (superclass != null) {
-      return superclass.findMethod(name);
-    }
-    return null;
+  FojFunction method(int index) {
+    return methods[index];
+  }
+
+  FojFunction superMethod(int index) {
+    return superMethods[index];
   }
 
   @Override
   public int arity() {
-    FojFunction initializer = findMethod("init");
-    if (initializer == null)
-      return 0;
-    return initializer.arity();
+    return arity;
   }
 
   @Override
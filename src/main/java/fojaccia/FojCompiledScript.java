@@ -0,0 +1,77 @@
+package fojaccia;
+
+import java.util.Map;
+
+import javax.script.Bindings;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+
+/**
+ * A script compiled by FojScriptEngine: the resolved and optimized syntax
+ * tree, which every evaluation runs, so it's only scanned, parsed and
+ * resolved once. Evaluations can run on any number of threads at once.
+ *
+ * Each evaluation runs in a fresh Context, whose globals start out as the
+ * global-scope Bindings overlaid with the engine-scope ones. Numbers come
+ * in as doubles, the only numbers scripts know. Once it's done, every
+ * global the script left behind is put back into the engine-scope
+ * Bindings, so a later evaluation with the same Bindings carries on from
+ * there. Output goes to the ScriptContext's writer.
+ */
+final class FojCompiledScript extends CompiledScript {
+  private final FojScriptEngine engine;
+  private final Program program;
+
+  FojCompiledScript(FojScriptEngine engine, Program program) {
+    this.engine = engine;
+    this.program = program;
+  }
+
+  /**
+   * Runs the script, returning null; statements have no value.
+   */
+  @Override
+  public Object eval(ScriptContext scriptContext) throws ScriptException {
+    Context context = new Context();
+    context.output(scriptContext.getWriter());
+    define(context, scriptContext.getBindings(ScriptContext.GLOBAL_SCOPE));
+    Bindings bindings = scriptContext.getBindings(ScriptContext.ENGINE_SCOPE);
+    define(context, bindings);
+
+    try {
+      context.run(program);
+    } catch (RuntimeError e) {
+      throw new ScriptException(e.getMessage(), FojScriptEngine.fileName(scriptContext), e.line());
+    } finally {
+      if (bindings != null) {
+        for (Map.Entry<String, Object> global : context.globals().entrySet()) {
+          // Natives are there in every Context anyway
+          if (!Interpreter.NATIVES.contains(global.getKey())) {
+            bindings.put(global.getKey(), global.getValue());
+          }
+        }
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public ScriptEngine getEngine() {
+    return engine;
+  }
+
+  private static void define(Context context, Bindings bindings) {
+    if (bindings == null)
+      return;
+    for (Map.Entry<String, Object> binding : bindings.entrySet()) {
+      // The engine puts its own bookkeeping in here too, under names no
+      // script could use
+      if (binding.getKey().startsWith("javax.script."))
+        continue;
+      Object value = binding.getValue();
+      context.define(binding.getKey(), value instanceof Number number ? number.doubleValue() : value);
+    }
+  }
+}
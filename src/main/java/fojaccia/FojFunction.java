@@ -1,5 +1,6 @@
 package fojaccia;
 
+import java.util.Arrays;
 import java.util.List;
 
 import fojaccia.Fojaccia.LogLevel;
@@ -8,17 +9,26 @@ public class FojFunction implements FojCallable {
   private final Stmt.Function declaration;
   private final Environment closure;
   private final boolean isInitializer;
+  // What `this` is, for a method that's been bound
+  private final FojInstance receiver;
+  // Each closure of a `memo fn` gets its own cache
+  private final MemoCache memo;
 
   FojFunction(Stmt.Function declaration, Environment closure, boolean isInitializer) {
+    this(declaration, closure, isInitializer, null);
+  }
+
+  private FojFunction(Stmt.Function declaration, Environment closure, boolean isInitializer,
+      FojInstance receiver) {
     this.declaration = declaration;
     this.closure = closure;
     this.isInitializer = isInitializer;
+    this.receiver = receiver;
+    this.memo = declaration.memoized ? new MemoCache() : null;
   }
 
   FojFunction bind(FojInstance instance) {
-    Environment environment = new Environment(closure);
-    environment.define("this", instance);
-    return new FojFunction(declaration, environment, isInitializer);
+    return new FojFunction(declaration, closure, isInitializer, instance);
   }
 
   @Override
@@ -27,23 +37,133 @@ public class FojFunction implements FojCallable {
   }
 
   @Override
-  public Object call(Interpreter interpreter, List<Object> arguments) {
-    Environment environment = new Environment(closure);
+  public Object call(Interpreter interpreter, Object[] arguments) {
+    Environment frame = frame();
+    for (int i = 0; i < arguments.length; i++) {
+      frame.define(i, arguments[i]);
+    }
+    return execute(interpreter, frame);
+  }
+
+  @Override
+  public Object call0(Interpreter interpreter) {
+    return execute(interpreter, frame());
+  }
+
+  @Override
+  public Object call1(Interpreter interpreter, Object a) {
+    Environment frame = frame();
+    frame.define(0, a);
+    return execute(interpreter, frame);
+  }
+
+  @Override
+  public Object call2(Interpreter interpreter, Object a, Object b) {
+    Environment frame = frame();
+    frame.define(0, a);
+    frame.define(1, b);
+    return execute(interpreter, frame);
+  }
+
+  @Override
+  public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+    Environment frame = frame();
+    frame.define(0, a);
+    frame.define(1, b);
+    frame.define(2, c);
+    return execute(interpreter, frame);
+  }
+
+  @Override
+  public Object call4(Interpreter interpreter, Object a, Object b, Object c, Object d) {
+    Environment frame = frame();
+    frame.define(0, a);
+    frame.define(1, b);
+    frame.define(2, c);
+    frame.define(3, d);
+    return execute(interpreter, frame);
+  }
 
-    for (int i = 0; i < declaration.params.size(); i++) {
-      environment.define(declaration.params.get(i).lexeme, arguments.get(i));
+  /**
+   * A fresh environment for one call. Parameters take the first slots, so a
+   * caller can evaluate its arguments straight into it before calling
+   * {@link #execute}. A method's `this` takes the slot after them.
+   */
+  Environment frame() {
+    Environment frame = new Environment(closure, declaration.scopeSize);
+    if (receiver != null) {
+      frame.define(declaration.params.size(), receiver);
     }
+    return frame;
+  }
+
+  /**
+   * Like {@link #frame()}, but for calling the method on the instance without
+   * binding it first.
+   */
+  Environment frame(FojInstance instance) {
+    Environment frame = new Environment(closure, declaration.scopeSize);
+    frame.define(declaration.params.size(), instance);
+    return frame;
+  }
+
+  boolean isMemoized() {
+    return memo != null;
+  }
+
+  boolean isInitializer() {
+    return isInitializer;
+  }
+
+  Stmt.Function declaration() {
+    return declaration;
+  }
 
-    Fojaccia.Log(LogLevel.DEBUG, "calling function: " + declaration.name + " with arguments: " + arguments.toString());
-    try {
-      interpreter.executeBlock(declaration.body, environment);
-    } catch (Return r) {
-      if (isInitializer) return closure.getAt(0, "this");
-      return r.value;
+  Object execute(Interpreter interpreter, Environment frame) {
+    if (memo == null) {
+      return run(interpreter, frame);
     }
 
-    if (isInitializer) return closure.getAt(0, "this");
-    return null;
+    // Taken before the body gets a chance to reassign its parameters
+    Object[] arguments = new Object[arity()];
+    for (int i = 0; i < arguments.length; i++) {
+      arguments[i] = frame.getAt(0, i);
+    }
+    List<Object> key = Arrays.asList(arguments);
+
+    Object result = memo.lookup(key);
+    if (result == MemoCache.MISSING) {
+      result = run(interpreter, frame);
+      memo.store(key, result);
+    }
+    return result;
+  }
+
+  private Object run(Interpreter interpreter, Environment frame) {
+    FojFunction function = this;
+    for (;;) {
+      if (Jit.enabled && !function.isInitializer) {
+        Object result = Jit.enter(interpreter, function.declaration, frame);
+        if (result != null)
+          return result;
+      }
+
+      if (Fojaccia.isLoggable(LogLevel.DEBUG)) {
+        Fojaccia.Log(LogLevel.DEBUG, "calling function: " + function.declaration.name);
+      }
+      Object completion = interpreter.executeBlock(function.declaration.body, frame);
+
+      // Run tail calls here instead of nesting them
+      if (completion instanceof TailCall call) {
+        function = call.function();
+        frame = call.frame();
+        continue;
+      }
+
+      // `this` lives in the frame, after the parameters
+      if (function.isInitializer) return frame.getAt(0, function.arity());
+      return completion == Interpreter.NORMAL ? null : completion;
+    }
   }
 
   @Override
@@ -1,30 +1,215 @@
 package fojaccia;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
 
+/**
+ * Fields are kept in a plain array laid out by the instance's Shape. Field
+ * sites cache the offset they found for a shape, so as long as they keep
+ * seeing instances shaped the same way a lookup is a pointer compare and an
+ * array load.
+ *
+ * A number stored into a field is kept unboxed in a parallel double array,
+ * made the first time one is, and its value slot is tagged, the way
+ * Environment keeps numbers in slots.
+ *
+ * Instances can be shared between tasks. While tasks spawned with the
+ * globals the class was declared in are running, adding a field, which may
+ * move the values to a bigger array, happens under the instance's lock,
+ * with the array stored before the shape that needs it. Reading and
+ * writing a field that's there takes no lock; a reader that sees a new
+ * shape before its array waits on the lock for the array. A tag is stored
+ * with release semantics after its number, and a reader that finds it
+ * fences before reading the number, as in Environment, so it sees that
+ * number or a later one. A task sees what another wrote once a channel or
+ * `spawn` has ordered the two. A field written without that order may not
+ * be seen for a while, or may be lost if another task adds a field to the
+ * instance at the same moment.
+ */
 class FojInstance {
+  private static final Object UNBOXED = new Object();
+  private static final VarHandle VALUE = MethodHandles.arrayElementVarHandle(Object[].class);
+  private static final VarHandle VALUES;
+
+  static {
+    try {
+      VALUES = MethodHandles.lookup().findVarHandle(FojInstance.class, "values", Object[].class);
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
   private FojClass fojClass;
-  private final Map<String, Object> fields = new HashMap<>();
+  // Read before `values`
+  private Shape shape = Shape.ROOT;
+  // Stored through VALUES, after `numbers`, when the instance grows
+  private Object[] values;
+  // Stored before the first tag in `values`, so whoever sees a tag sees them
+  private double[] numbers;
 
   FojInstance(FojClass fojClass) {
     this.fojClass = fojClass;
+    this.values = new Object[fojClass.fieldCount];
+  }
+
+  FojClass fojClass() {
+    return fojClass;
   }
 
-  Object get(Token name) {
-    if (fields.containsKey(name.lexeme)) {
-      return fields.get(name.lexeme);
+  Shape shape() {
+    return shape;
+  }
+
+  boolean hasField(String name) {
+    return shape.offsetOf(name) != -1;
+  }
+
+  Object get(Expr.Get site) {
+    int offset = fieldOffset(site);
+    if (offset != -1) {
+      Object value = values(offset)[offset];
+      if (value != UNBOXED)
+        return value;
+      VarHandle.acquireFence();
+      return numbers[offset];
     }
 
-    FojFunction method = fojClass.findMethod(name.lexeme);
+    FojFunction method = fojClass.findMethod(site.name.lexeme);
     if (method != null)
       return method.bind(this);
 
-    throw new RuntimeError(name, "Undefined property: `" + name.lexeme + "`");
+    throw new RuntimeError(site.name, "Undefined property: `" + site.name.lexeme + "`");
   }
 
-  void set(Token name, Object value) {
-    fields.put(name.lexeme, value);
+  double getNumber(Expr.Get site) {
+    int offset = fieldOffset(site);
+    if (offset != -1 && values(offset)[offset] == UNBOXED) {
+      VarHandle.acquireFence();
+      return numbers[offset];
+    }
+    return Interpreter.expectNumber(get(site));
+  }
+
+  void set(Expr.Set site, Object value) {
+    // Has to run before `values` is read, since it may grow the array
+    int offset = storeOffset(site);
+    values(offset)[offset] = value;
+  }
+
+  void setNumber(Expr.Set site, double value) {
+    int offset = storeOffset(site);
+    Object[] values = values(offset);
+    double[] numbers = this.numbers;
+    if (numbers == null || offset >= numbers.length) {
+      numbers = makeNumbers();
+    }
+    numbers[offset] = value;
+    VALUE.setRelease(values, offset, UNBOXED);
+  }
+
+  private int fieldOffset(Expr.Get site) {
+    Shape shape = this.shape;
+    FieldCache cache = site.cache;
+    if (cache != null && cache.shape == shape) {
+      return cache.offset;
+    }
+
+    int offset = shape.offsetOf(site.name.lexeme);
+    if (offset != -1) {
+      site.cache = new FieldCache(shape, offset, shape);
+    }
+    return offset;
+  }
+
+  /**
+   * Finds where the site's field goes, adding it (and moving to the next
+   * shape) if this instance doesn't have it yet.
+   */
+  private int storeOffset(Expr.Set site) {
+    Shape shape = this.shape;
+    FieldCache cache = site.cache;
+    if (cache == null || cache.shape != shape) {
+      int offset = shape.offsetOf(site.name.lexeme);
+      if (offset != -1) {
+        cache = new FieldCache(shape, offset, shape);
+      } else {
+        cache = new FieldCache(shape, shape.size(), shape.withField(site.name.lexeme));
+      }
+      site.cache = cache;
+    }
+
+    if (cache.next != shape && !grow(shape, cache.next)) {
+      // Another task added a field first
+      return storeOffset(site);
+    }
+    return cache.offset;
+  }
+
+  /**
+   * The values, with room for the offset in a shape this instance has had.
+   */
+  private Object[] values(int offset) {
+    Object[] values = (Object[]) VALUES.getAcquire(this);
+    if (offset < values.length)
+      return values;
+    // The shape came from another task's grow, ahead of its array
+    synchronized (this) {
+      return this.values;
+    }
+  }
+
+  /**
+   * Makes the numbers, or makes room in them, for every value there is.
+   */
+  private double[] makeNumbers() {
+    if (!fojClass.globals.shared())
+      return resizeNumbers();
+    synchronized (this) {
+      return resizeNumbers();
+    }
+  }
+
+  private double[] resizeNumbers() {
+    if (numbers == null) {
+      numbers = new double[values.length];
+    } else if (numbers.length < values.length) {
+      numbers = Arrays.copyOf(numbers, values.length);
+    }
+    return numbers;
+  }
+
+  /**
+   * Moves the instance from one shape to the next, unless it has already
+   * moved on from it. While there are no tasks, nothing else can see the
+   * instance, so there's nothing to lock out.
+   */
+  private boolean grow(Shape from, Shape next) {
+    if (!fojClass.globals.shared())
+      return moveTo(from, next);
+    synchronized (this) {
+      return moveTo(from, next);
+    }
+  }
+
+  private boolean moveTo(Shape from, Shape next) {
+    if (shape != from)
+      return false;
+    if (values.length < next.size()) {
+      Object[] values = Arrays.copyOf(this.values, next.size());
+      // A tag just copied has its number in the array copied after it
+      VarHandle.acquireFence();
+      if (numbers != null) {
+        numbers = Arrays.copyOf(numbers, next.size());
+      }
+      VALUES.setRelease(this, values);
+      // Later instances of the class start out with room for this many fields
+      if (fojClass.fieldCount < next.size()) {
+        fojClass.fieldCount = next.size();
+      }
+    }
+    shape = next;
+    return true;
   }
 
   @Override
@@ -0,0 +1,91 @@
+package fojaccia;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+
+/**
+ * Fojaccia's javax.script engine. Scripts compile to a Program, which
+ * FojCompiledScript runs with whatever Bindings it's given, so a script
+ * that runs often should be compiled once and evaluated as often as it's
+ * needed; eval on a string compiles it every time.
+ *
+ * What a script's globals start out as, and what they end up as, is the
+ * Bindings (see FojCompiledScript).
+ */
+public final class FojScriptEngine extends AbstractScriptEngine implements Compilable {
+  private final FojScriptEngineFactory factory;
+
+  FojScriptEngine(FojScriptEngineFactory factory) {
+    this.factory = factory;
+  }
+
+  @Override
+  public Object eval(String script, ScriptContext context) throws ScriptException {
+    return compile(script, context).eval(context);
+  }
+
+  @Override
+  public Object eval(Reader reader, ScriptContext context) throws ScriptException {
+    return eval(read(reader), context);
+  }
+
+  @Override
+  public CompiledScript compile(String script) throws ScriptException {
+    return compile(script, context);
+  }
+
+  @Override
+  public CompiledScript compile(Reader reader) throws ScriptException {
+    return compile(read(reader));
+  }
+
+  @Override
+  public Bindings createBindings() {
+    return new SimpleBindings();
+  }
+
+  @Override
+  public ScriptEngineFactory getFactory() {
+    return factory;
+  }
+
+  /**
+   * Compiles the script, naming the file {@code context} says it came from
+   * if it doesn't compile.
+   */
+  private CompiledScript compile(String script, ScriptContext context) throws ScriptException {
+    try {
+      return new FojCompiledScript(this, Program.compile(script));
+    } catch (CompileError e) {
+      throw new ScriptException(e.getMessage(), fileName(context), -1);
+    }
+  }
+
+  static String fileName(ScriptContext context) {
+    Object fileName = context.getAttribute(ScriptEngine.FILENAME);
+    return fileName == null ? null : fileName.toString();
+  }
+
+  private static String read(Reader reader) throws ScriptException {
+    StringBuilder script = new StringBuilder();
+    char[] buffer = new char[8192];
+    try {
+      for (int read; (read = reader.read(buffer)) != -1;) {
+        script.append(buffer, 0, read);
+      }
+    } catch (IOException e) {
+      throw new ScriptException(e);
+    }
+    return script.toString();
+  }
+}
@@ -0,0 +1,95 @@
+package fojaccia;
+
+import java.util.List;
+
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+
+/**
+ * Makes Fojaccia available through javax.script, as "fojaccia" or "foj":
+ *
+ * new ScriptEngineManager().getEngineByName("fojaccia")
+ *
+ * It's registered in META-INF/services, so a ScriptEngineManager finds it
+ * on the classpath.
+ */
+public final class FojScriptEngineFactory implements ScriptEngineFactory {
+  private static final List<String> NAMES = List.of("fojaccia", "foj");
+  private static final List<String> EXTENSIONS = List.of("foj");
+  private static final List<String> MIME_TYPES = List.of("application/x-fojaccia");
+
+  @Override
+  public String getEngineName() {
+    return "Fojaccia";
+  }
+
+  @Override
+  public String getEngineVersion() {
+    return "1.0";
+  }
+
+  @Override
+  public List<String> getExtensions() {
+    return EXTENSIONS;
+  }
+
+  @Override
+  public List<String> getMimeTypes() {
+    return MIME_TYPES;
+  }
+
+  @Override
+  public List<String> getNames() {
+    return NAMES;
+  }
+
+  @Override
+  public String getLanguageName() {
+    return "Fojaccia";
+  }
+
+  @Override
+  public String getLanguageVersion() {
+    return "1.0";
+  }
+
+  @Override
+  public Object getParameter(String key) {
+    return switch (key) {
+      case ScriptEngine.ENGINE -> getEngineName();
+      case ScriptEngine.ENGINE_VERSION -> getEngineVersion();
+      case ScriptEngine.NAME -> NAMES.get(0);
+      case ScriptEngine.LANGUAGE -> getLanguageName();
+      case ScriptEngine.LANGUAGE_VERSION -> getLanguageVersion();
+      // Every evaluation runs in a Context of its own, so evaluations on
+      // different threads only see each other through Bindings they share
+      case "THREADING" -> "MULTITHREADED";
+      default -> null;
+    };
+  }
+
+  @Override
+  public String getMethodCallSyntax(String object, String method, String... arguments) {
+    return object + "." + method + "(" + String.join(", ", arguments) + ")";
+  }
+
+  // Statements come without their semicolons, which getProgram adds
+  @Override
+  public String getOutputStatement(String toDisplay) {
+    return "print " + toDisplay;
+  }
+
+  @Override
+  public String getProgram(String... statements) {
+    StringBuilder program = new StringBuilder();
+    for (String statement : statements) {
+      program.append(statement).append(";\n");
+    }
+    return program.toString();
+  }
+
+  @Override
+  public ScriptEngine getScriptEngine() {
+    return new FojScriptEngine(this);
+  }
+}
@@ -3,11 +3,14 @@ package fojaccia;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.nio.charset.Charset;
-import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Date;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
 
 import static fojaccia.TokenType.EOF;
 
@@ -20,21 +23,55 @@ import static fojaccia.TokenType.EOF;
 
 public class Fojaccia {
 
-  private static final Interpreter interpreter = new Interpreter();
+  // Fixed at startup (-Dfoj.log=DEBUG) so disabled levels fold away; has to be
+  // initialized before the interpreter, which defines globals
+  private static final LogLevel logLevel = initialLogLevel();
+
+  // Where the errors of a compile on this thread go
+  private static final ThreadLocal<List<String>> errors = new ThreadLocal<>();
 
-  public static boolean repl = false;
-  private static LogLevel logLevel = LogLevel.INFO;
-  private static boolean hadError;
-  private static boolean hadRuntimeError;
+  // The command line's engine: one or the other
+  private final Interpreter interpreter;
+  private final VM vm;
+  private final boolean optimize;
+  // What the command line has run into. Programs compiled for embedding
+  // (see Program) get their errors back instead.
+  private boolean hadError;
+  private boolean hadRuntimeError;
+
+  private Fojaccia(boolean useVm, boolean optimize, boolean repl) {
+    this.interpreter = useVm ? null : new Interpreter(System.out, repl);
+    this.vm = useVm ? new VM(repl) : null;
+    this.optimize = optimize;
+  }
 
   public static void main(String[] args) throws IOException {
-    if (args.length > 1) {
-      System.out.println("Usage: foj <script>");
-      System.exit(64); // EX_USAGE
-    } else if (args.length == 1) {
-      runFile(args[0]);
+    String script = null;
+    boolean useVm = false;
+    boolean optimize = true;
+    for (String arg : args) {
+      if (arg.equals("--engine=vm")) {
+        useVm = true;
+      } else if (arg.equals("--engine=tree")) {
+        useVm = false;
+      } else if (arg.equals("-O0")) {
+        optimize = false;
+      } else if (arg.equals("-O1")) {
+        optimize = true;
+      } else if (script == null && !arg.startsWith("-")) {
+        script = arg;
+      } else {
+        System.out.println("Usage: foj [--engine=tree|vm] [-O0|-O1] [script]");
+        System.exit(64); // EX_USAGE
+      }
+    }
+
+    // Without a script, it's the REPL
+    Fojaccia cli = new Fojaccia(useVm, optimize, script == null);
+    if (script != null) {
+      cli.runFile(script);
     } else {
-      runPrompt();
+      cli.runPrompt();
     }
   }
 
@@ -46,11 +83,25 @@ public class Fojaccia {
     ERROR
   }
 
-  private static LogLevel getLogLevel() {
-    if (logLevel == null) {
+  private static LogLevel initialLogLevel() {
+    String level = System.getProperty("foj.log");
+    if (level == null) {
       return LogLevel.INFO;
     }
-    return logLevel;
+    try {
+      return LogLevel.valueOf(level.toUpperCase());
+    } catch (IllegalArgumentException e) {
+      return LogLevel.INFO;
+    }
+  }
+
+  /**
+   * Guard for log messages that are expensive to build. The level is a
+   * static final, so once the JIT has compiled the caller a disabled check
+   * costs nothing.
+   */
+  public static boolean isLoggable(LogLevel level) {
+    return level.ordinal() >= logLevel.ordinal();
   }
 
   public static void Log(String message) {
@@ -61,25 +112,25 @@ public class Fojaccia {
     Log(level, -1, message);
   }
 
+  public static void Log(LogLevel level, Supplier<String> message) {
+    if (isLoggable(level)) {
+      LogAppender.append(level, -1, message.get());
+    }
+  }
+
   public static void Log(LogLevel level, int line, String message) {
-    if (level.ordinal() >= getLogLevel().ordinal()) {
-      StringBuilder logMessage = new StringBuilder();
-      logMessage.append(new Date(System.currentTimeMillis()).toString());
-      logMessage.append("  " + level.name());
-      logMessage.append("\t");
-      if (line > -1) {
-        logMessage.append("[line " + line + "] ");
-      }
-      logMessage.append(message);
-      System.out.println(logMessage);
+    if (isLoggable(level)) {
+      LogAppender.append(level, line, message);
     }
   }
 
   public static void RuntimeError(RuntimeError error) {
-    System.err.println(error.getMessage() + "\n" +
-        "[line " + error.token.line + "]");
+    RuntimeError(error.token.line, error.getMessage());
+  }
 
-    hadRuntimeError = true;
+  public static void RuntimeError(int line, String message) {
+    System.err.println(message + "\n" +
+        "[line " + line + "]");
   }
 
   public static void Error(int line, String message) {
@@ -87,55 +138,121 @@ public class Fojaccia {
   }
 
   public static void Error(Token token, String message) {
+    report(format(token, message));
+  }
+
+  static String format(Token token, String message) {
     if (token.type.equals(EOF)) {
-      report(token.line, " at end", message);
-    } else {
-      report(token.line, " at '" + token.lexeme + "'", message);
+      return format(token.line, " at end", message);
     }
+    return format(token.line, " at '" + token.lexeme + "'", message);
   }
 
-  private static void runFile(String path) throws IOException {
-    byte[] bytes = Files.readAllBytes(Paths.get(path));
+  private void runFile(String path) throws IOException {
+    Path file = Paths.get(path).toAbsolutePath().normalize();
     Log("Running file from path: " + path);
-    run(new String(bytes, Charset.defaultCharset()));
+    List<String> errors = new ArrayList<>();
+    Map<String, List<Stmt>> modules = new HashMap<>();
+    List<Stmt> statements = ModuleLoader.load(file, optimize, modules, errors);
+    report(errors);
+    if (statements != null) {
+      // A module importing it back shouldn't run it again
+      if (vm != null) {
+        vm.markImported(file.toString());
+      } else {
+        interpreter.markImported(file.toString());
+      }
+      execute(statements, modules);
+    }
+    LogAppender.flush();
     if (hadError)
       System.exit(65); // EX_DATAERR
     if (hadRuntimeError)
       System.exit(70); // EX_SOFTWARE
   }
 
-  private static void runPrompt() throws IOException {
+  private void runPrompt() throws IOException {
     InputStreamReader input = new InputStreamReader(System.in);
     BufferedReader reader = new BufferedReader(input);
-    repl = true;
 
     for (;;) {
       System.out.print("> ");
       String line = reader.readLine();
       if (line == null)
         break;
-      run(line);
+      List<String> errors = new ArrayList<>();
+      Map<String, List<Stmt>> modules = new HashMap<>();
+      List<Stmt> statements = compile(new Scanner(line), errors);
+      boolean loaded = statements != null
+          && ModuleLoader.load(statements, Paths.get(""), optimize, modules, errors);
+      report(errors);
+      if (loaded) {
+        execute(optimize ? new Optimizer().optimize(statements) : statements, modules);
+      }
+      LogAppender.flush();
       hadError = false;
     }
   }
 
-  private static void run(String input) {
-    Scanner scanner = new Scanner(input);
-    List<Token> tokens = scanner.scanTokens();
-    Parser parser = new Parser(tokens);
-    List<Stmt> statements = parser.parse();
-    if (hadError)
-      return;
-    // System.out.println(new AstPrinter().print(expression));
-    Resolver resolver = new Resolver(interpreter);
-    resolver.resolve(statements);
-    if (hadError)
+  /**
+   * Scans, parses and resolves the source, returning null if it has errors,
+   * which are added to the list rather than reported.
+   */
+  static List<Stmt> compile(Scanner scanner, List<String> errors) {
+    List<String> enclosing = Fojaccia.errors.get();
+    Fojaccia.errors.set(errors);
+    try {
+      TokenBuffer tokens = scanner.tokens();
+      Parser parser = new Parser(tokens);
+      List<Stmt> statements = parser.parse();
+      if (!errors.isEmpty())
+        return null;
+      // System.out.println(new AstPrinter().print(expression));
+      Resolver resolver = new Resolver();
+      resolver.resolve(statements);
+      if (!errors.isEmpty())
+        return null;
+      return statements;
+    } finally {
+      Fojaccia.errors.set(enclosing);
+    }
+  }
+
+  private void execute(List<Stmt> statements, Map<String, List<Stmt>> modules) {
+    // Anything logged while compiling should come out ahead of the program's output
+    LogAppender.flush();
+    if (vm == null) {
+      hadRuntimeError |= !interpreter.interpret(statements, modules);
       return;
-    interpreter.interpret(statements);
+    }
+    try {
+      hadRuntimeError |= !vm.interpret(statements, modules);
+    } catch (CompileError error) {
+      report(error.errors());
+    }
+  }
+
+  static String format(int line, String where, String message) {
+    return "[line " + line + "] Error " + where + ": " + message;
   }
 
   private static void report(int line, String where, String message) {
-    Log("[line " + line + "] Error " + where + ": " + message);
-    hadError = true;
+    report(format(line, where, message));
+  }
+
+  private static void report(String error) {
+    List<String> collected = errors.get();
+    if (collected != null) {
+      collected.add(error);
+      return;
+    }
+    Log(error);
+  }
+
+  private void report(List<String> errors) {
+    for (String error : errors) {
+      Log(error);
+      hadError = true;
+    }
   }
 }
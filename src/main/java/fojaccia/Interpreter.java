@@ -1,10 +1,12 @@
 package fojaccia;
 
+import java.io.PrintStream;
 import java.util.ArrayList;
-
-import java.util.Map;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 import fojaccia.Fojaccia.LogLevel;
 import fojaccia.Stmt.Expression;
@@ -13,16 +15,67 @@ import fojaccia.Stmt.Print;
 
 public class Interpreter implements
     Expr.Visitor<Object>,
-    Stmt.Visitor<Void> {
-
-  final Environment globals = new Environment();
-  private final Map<Expr, Integer> locals = new HashMap<>();
-  private Environment environment = globals;
+    Stmt.Visitor<Object> {
+
+  /**
+   * What a statement completes with when it doesn't return. Anything else a
+   * statement hands back is the value of a `return` it ran into, which blocks
+   * and loops stop and pass along until the function call picks it up.
+   */
+  static final Object NORMAL = new Object();
+
+  final Environment globals;
+  private Environment environment;
+  // Modules that have run, or are running
+  private final Set<String> imported;
+  // What the current run's imports refer to, as they were when it was loaded
+  private Map<String, List<Stmt>> modules = Map.of();
+  // Where each line `print` makes goes
+  private Consumer<String> out;
+  final boolean repl;
+  // What the current run has spawned
+  private Tasks tasks;
 
   public static final String NATIVE_CLOCK = "clock";
   public static final String NATIVE_PRINT = "print";
+  public static final String NATIVE_CHANNEL = "channel";
+  public static final String NATIVE_SEND = "send";
+  public static final String NATIVE_RECEIVE = "receive";
+  static final Set<String> NATIVES =
+      Set.of(NATIVE_CLOCK, NATIVE_CHANNEL, NATIVE_SEND, NATIVE_RECEIVE);
 
   Interpreter() {
+    this(System.out, false);
+  }
+
+  /**
+   * An interpreter printing to the stream. One for the REPL prints the value
+   * of every expression statement too.
+   */
+  Interpreter(PrintStream out, boolean repl) {
+    this.globals = new Environment();
+    this.environment = globals;
+    this.imported = new HashSet<>();
+    this.out = out::println;
+    this.repl = repl;
+    defineNatives();
+  }
+
+  /**
+   * An interpreter for a task the parent spawns, sharing its globals, its
+   * output and the run it's part of. Tasks only run functions, so they never
+   * import anything.
+   */
+  private Interpreter(Interpreter parent) {
+    this.globals = parent.globals;
+    this.environment = globals;
+    this.imported = parent.imported;
+    this.out = parent.out;
+    this.repl = parent.repl;
+    this.tasks = parent.tasks;
+  }
+
+  private void defineNatives() {
     globals.define(NATIVE_CLOCK, new FojCallable() {
       @Override
       public int arity() {
@@ -30,7 +83,12 @@ public class Interpreter implements
       }
 
       @Override
-      public Object call(Interpreter interpreter, List<Object> arguments) {
+      public Object call(Interpreter interpreter, Object[] arguments) {
+        return call0(interpreter);
+      }
+
+      @Override
+      public Object call0(Interpreter interpreter) {
         return (double) System.currentTimeMillis() / 1000.0;
       }
 
@@ -40,12 +98,14 @@ public class Interpreter implements
       }
     });
 
+    FojChannel.defineNatives(globals);
+
     // globals.define(NATIVE_PRINT, new FojCallable(String message) {
     // @Override
     // public int arity() { return 1; }
     //
     // @Override
-    // public Object call(Interpreter interpreter, List<Object> arguments) {
+    // public Object call(Interpreter interpreter, Object[] arguments) {
     // System.out.println(arguments.get(0));
     // return new Object();
     // }
@@ -57,55 +117,113 @@ public class Interpreter implements
     // });
   }
 
-  public void interpret(List<Stmt> statements) {
+  /**
+   * Counts the module as already run, so importing it does nothing; for the
+   * file the program started from.
+   */
+  void markImported(String module) {
+    imported.add(module);
+  }
+
+  /**
+   * Runs the statements, reporting the RuntimeError that stops them, if one
+   * does, and returning false if so.
+   */
+  public boolean interpret(List<Stmt> statements, Map<String, List<Stmt>> modules) {
     try {
-      for (Stmt statement : statements) {
-        execute(statement);
-      }
+      run(statements, modules);
       // Object value = evaluate(exp);
       // System.out.println(makeTreeString(value));
+      return true;
     } catch (RuntimeError err) {
       Fojaccia.RuntimeError(err);
+      return false;
+    }
+  }
+
+  /**
+   * Runs the statements in the globals, with what they import, and waits
+   * for every task they spawn, throwing the first RuntimeError rather than
+   * reporting it.
+   */
+  void run(List<Stmt> statements, Map<String, List<Stmt>> modules) {
+    environment = globals;
+    this.modules = modules;
+    tasks = new Tasks(globals);
+    try {
+      for (Stmt statement : statements) {
+        execute(statement);
+      }
+    } catch (RuntimeError error) {
+      tasks.fail(error);
     }
+    tasks.await();
+  }
+
+  void output(Consumer<String> out) {
+    this.out = out;
   }
 
-  private void execute(Stmt statement) {
-    statement.accept(this);
+  /**
+   * Forgets every global and every module that has run, leaving it as it
+   * was when it was made.
+   */
+  void reset() {
+    globals.clear();
+    imported.clear();
+    environment = globals;
+    defineNatives();
   }
 
-  void resolve(Expr expr, int depth) {
-    locals.put(expr, depth);
+  private Object execute(Stmt statement) {
+    return statement.accept(this);
   }
 
-  void executeBlock(List<Stmt> statements, Environment environment) {
+  Object executeBlock(List<Stmt> statements, Environment environment) {
     Environment previous = this.environment;
 
-    Fojaccia.Log(LogLevel.DEBUG, "executing block");
+    if (Fojaccia.isLoggable(LogLevel.DEBUG)) {
+      Fojaccia.Log(LogLevel.DEBUG, "executing block");
+    }
     try {
       this.environment = environment;
       for (Stmt statement : statements) {
-        execute(statement);
+        Object completion = execute(statement);
+        if (completion != NORMAL) {
+          return completion;
+        }
       }
+      return NORMAL;
     } finally {
       this.environment = previous;
     }
   }
 
   @Override
-  public Void visitFunctionStmt(Stmt.Function stmt) {
+  public Object visitFunctionStmt(Stmt.Function stmt) {
     FojFunction function = new FojFunction(stmt, environment, false);
-    environment.define(stmt.name.lexeme, function);
-    return null;
+    define(stmt.name, stmt.slot, function);
+    return NORMAL;
   }
 
   @Override
-  public Void visitBlockStmt(Stmt.Block stmt) {
-    executeBlock(stmt.statements, new Environment(environment));
-    return null;
+  public Object visitImportStmt(Stmt.Import stmt) {
+    // Imports are only allowed at the top, so this runs in the globals
+    if (imported.add(stmt.module)) {
+      for (Stmt statement : modules.get(stmt.module)) {
+        execute(statement);
+      }
+    }
+    return NORMAL;
   }
 
   @Override
-  public Void visitClassStmt(Stmt.Class stmt) {
+  public Object visitBlockStmt(Stmt.Block stmt) {
+    return executeBlock(stmt.statements, new Environment(environment, stmt.scopeSize));
+  }
+
+  @Override
+  public Object visitClassStmt(Stmt.Class stmt) {
     Object superclass = null;
     if (stmt.superclass != null) {
       superclass = evaluate(stmt.superclass);
@@ -114,33 +232,41 @@ public class Interpreter implements
       }
     }
 
-    environment.define(stmt.name.lexeme, null);
+    define(stmt.name, stmt.slot, null);
 
+    // The `super` slot holds the class being defined, which has its methods'
+    // super targets already looked up
     if (stmt.superclass != null) {
-      environment = new Environment(environment);
-      environment.define("super", superclass);
+      environment = new Environment(environment, 1);
     }
 
-    Map<String, FojFunction> methods = new HashMap<>();
+    List<FojFunction> methods = new ArrayList<>(stmt.methods.size());
     for (Stmt.Function method : stmt.methods) {
-      FojFunction function = new FojFunction(method, environment, method.name.lexeme.equals("init"));
-      methods.put(method.name.lexeme, function);
+      methods.add(new FojFunction(method, environment, method.name.lexeme.equals("init")));
     }
-    FojClass fojClass = new FojClass(stmt.name.lexeme, (FojClass) superclass, methods);
+    ClassLayout layout = ClassLayout.of(stmt,
+        superclass == null ? ClassLayout.NONE : ((FojClass) superclass).layout);
+    FojClass fojClass = new FojClass(stmt.name.lexeme, (FojClass) superclass, layout, methods,
+        stmt.superMethods, globals);
 
     if (superclass != null) {
+      environment.define(0, fojClass);
       environment = environment.enclosing;
     }
 
-    environment.assign(stmt.name, fojClass);
-    return null;
+    if (stmt.slot == -1) {
+      environment.assign(stmt.name, fojClass);
+    } else {
+      environment.define(stmt.slot, fojClass);
+    }
+    return NORMAL;
   }
 
   @Override
   public Object visitGet(Expr.Get expr) {
     Object object = evaluate(expr.object);
     if (object instanceof FojInstance) {
-      return ((FojInstance) object).get(expr.name);
+      return ((FojInstance) object).get(expr);
     }
 
     throw new RuntimeError(expr.name, "Only instances have properties");
@@ -154,17 +280,25 @@ public class Interpreter implements
       throw new RuntimeError(expr.name, "Only instances have fields");
     }
 
+    if (producesNumber(expr.value)) {
+      try {
+        return setNumber((FojInstance) object, expr);
+      } catch (UnexpectedResult result) {
+        return result.value;
+      }
+    }
+
     Object value = evaluate(expr.value);
-    ((FojInstance) object).set(expr.name, value);
+    ((FojInstance) object).set(expr, value);
     return value;
   }
 
   @Override
   public Object visitSuper(Expr.Super expr) {
-    int distance = locals.get(expr);
-    FojClass superclass = (FojClass) environment.getAt(distance, "super");
-    FojInstance object = (FojInstance) environment.getAt(distance - 1, "this");
-    FojFunction method = superclass.findMethod(expr.method.lexeme);
+    int distance = expr.depth;
+    FojClass fojClass = (FojClass) environment.getAt(distance, 0);
+    FojInstance object = (FojInstance) environment.getAt(distance - 1, expr.receiver);
+    FojFunction method = fojClass.superMethod(expr.index);
 
     if (method == null) {
       throw new RuntimeError(expr.method, "Undefined property `" + expr.method.lexeme + "`");
@@ -185,12 +319,21 @@ public class Interpreter implements
 
   @Override
   public Object visitAssignment(Expr.Assignment expr) {
+    if (producesNumber(expr.value)) {
+      try {
+        return assignNumber(expr);
+      } catch (UnexpectedResult result) {
+        return result.value;
+      }
+    }
+
     Object value = evaluate(expr.value);
-    Fojaccia.Log(LogLevel.DEBUG, "visiting assignment expression with value: " + value);
+    if (Fojaccia.isLoggable(LogLevel.DEBUG)) {
+      Fojaccia.Log(LogLevel.DEBUG, "visiting assignment expression with value: " + value);
+    }
 
-    Integer distance = locals.get(expr);
-    if (distance != null) {
-      environment.assignAt(distance, expr.name, value);
+    if (expr.depth != -1) {
+      environment.assignAt(expr.depth, expr.slot, value);
     } else {
       globals.assign(expr.name, value);
     }
@@ -199,157 +342,263 @@ public class Interpreter implements
   }
 
   @Override
-  public Void visitVarStmt(Stmt.Var stmt) {
+  public Object visitVarStmt(Stmt.Var stmt) {
+    if (stmt.slot != -1 && stmt.initializer != null && producesNumber(stmt.initializer)) {
+      try {
+        environment.defineNumber(stmt.slot, evaluateNumber(stmt.initializer));
+      } catch (UnexpectedResult result) {
+        environment.define(stmt.slot, result.value);
+      }
+      return NORMAL;
+    }
+
     Object value = null;
     if (stmt.initializer != null) {
       value = evaluate(stmt.initializer);
     }
 
-    environment.define(stmt.name.lexeme, value);
-    return null;
+    define(stmt.name, stmt.slot, value, stmt.constant);
+    return NORMAL;
   }
 
   @Override
-  public Void visitExpressionStmt(Expression stmt) {
+  public Object visitExpressionStmt(Expression stmt) {
+    if (!repl && assignNumberForEffect(stmt.expression)) {
+      return NORMAL;
+    }
+
     Object value = evaluate(stmt.expression);
-    if (Fojaccia.repl) {
-      System.out.println(makeTreeString(value));
+    if (repl) {
+      out.accept(makeTreeString(value));
     }
-    return null;
+    return NORMAL;
   }
 
   @Override
-  public Void visitPrintStmt(Print stmt) {
-    Object value = makeTreeString(evaluate(stmt.expression));
-    System.out.println(value);
-    return null;
+  public Object visitPrintStmt(Print stmt) {
+    out.accept(makeTreeString(evaluate(stmt.expression)));
+    return NORMAL;
   }
 
   @Override
-  public Void visitReturnStmt(Stmt.Return stmt) {
+  public Object visitReturnStmt(Stmt.Return stmt) {
     Object value = null;
     if (stmt.value != null) {
-      Fojaccia.Log(LogLevel.DEBUG, "About to evaluate return value: " + stmt.value);
-      value = evaluate(stmt.value);
-      Fojaccia.Log(LogLevel.DEBUG, "Return value evaluated to: " + value);
-
+      if (Fojaccia.isLoggable(LogLevel.DEBUG)) {
+        Fojaccia.Log(LogLevel.DEBUG, "About to evaluate return value: " + stmt.value);
+      }
+      value = stmt.tailCall != null ? call(stmt.tailCall, true) : evaluate(stmt.value);
+      if (Fojaccia.isLoggable(LogLevel.DEBUG)) {
+        Fojaccia.Log(LogLevel.DEBUG, "Return value evaluated to: " + value);
+      }
     }
 
-    throw new Return(value);
+    return value;
   }
 
   @Override
-  public Void visitIfStmt(If stmt) {
+  public Object visitIfStmt(If stmt) {
     if (isTruthy(evaluate(stmt.condition))) {
-      execute(stmt.thenBranch);
+      return execute(stmt.thenBranch);
     } else if (stmt.elseBranch != null) {
-      execute(stmt.elseBranch);
+      return execute(stmt.elseBranch);
     }
 
-    return null;
+    return NORMAL;
   }
 
   @Override
   public Object visitBinary(Expr.Binary exp) {
-    Fojaccia.Log(LogLevel.DEBUG, "Evaluating binary with operator: " + exp.operator.type);
-    Object left = evaluate(exp.left);
-    Fojaccia.Log(LogLevel.DEBUG, "Left evaluated to: " + left);
-    Object right = evaluate(exp.right);
-    Fojaccia.Log(LogLevel.DEBUG, "Right evaluated to: " + right);
-
-    switch (exp.operator.type) {
-      case GREATER:
-        verifyNumberOperands(exp.operator, left, right);
-        return (double) left > (double) right;
-      case GREATER_EQUAL:
-        verifyNumberOperands(exp.operator, left, right);
-        return (double) left >= (double) right;
-      case LESS:
-        verifyNumberOperands(exp.operator, left, right);
-        return (double) left < (double) right;
-      case LESS_EQUAL:
-        verifyNumberOperands(exp.operator, left, right);
-        return (double) left <= (double) right;
-      case BANG_EQUAL:
-        return !isEqual(left, right);
-      case EQUAL_EQUAL:
-        return isEqual(left, right);
-      case MINUS:
-        verifyNumberOperands(exp.operator, left, right);
-        return (double) left - (double) right;
-      case PLUS:
-        Fojaccia.Log(LogLevel.DEBUG, "In PLUS case now");
-        if (left instanceof Double && right instanceof Double) {
-          return (double) left + (double) right;
-        }
-
-        if (left instanceof String || right instanceof String) {
-          return makeTreeString(left) + makeTreeString(right);
-        }
-
-        throw new RuntimeError(exp.operator, "Operands must be numbers or strings");
-      case SLASH:
-        verifyNumberOperands(exp.operator, left, right);
-        return (double) left / (double) right;
-      case STAR:
-        verifyNumberOperands(exp.operator, left, right);
-        return (double) left * (double) right;
-      // case AND:
-      // Fojaccia.Log(LogLevel.DEBUG, "interpreting AND with left: " + left + ",
-      // right: " + right);
-      // return (boolean) left && (boolean) right;
-      // case OR:
-      // Fojaccia.Log(LogLevel.DEBUG, "interpreting OR with left: " + left + ", right:
-      // " + right);
-      // return (boolean) left && (boolean) right;
-      default:
-        return null;
+    if (Fojaccia.isLoggable(LogLevel.DEBUG)) {
+      Fojaccia.Log(LogLevel.DEBUG, "Evaluating binary with operator: " + exp.operator.type);
     }
+    return exp.node.execute(this, exp);
   }
 
   @Override
   public Object visitCall(Expr.Call exp) {
-    Object callee = evaluate(exp.callee);
-    Fojaccia.Log(LogLevel.DEBUG, "visiting call expression, callee is: " + callee);
-    Fojaccia.Log(LogLevel.DEBUG, "callee class is: " + callee.getClass().getName());
-    if (!(callee instanceof FojCallable)) {
-      throw new RuntimeError(exp.paren, "Only functions and classes can be called");
+    return call(exp, false);
+  }
+
+  /**
+   * A tail call to a Fojaccia function or method isn't run here; it comes
+   * back as a TailCall for the enclosing function to run in its place.
+   */
+  private Object call(Expr.Call exp, boolean tail) {
+    if (exp.callee instanceof Expr.Get get) {
+      return invoke(exp, get, tail);
+    }
+    return call(exp, evaluate(exp.callee), tail);
+  }
+
+  /**
+   * `object.name(...)`: if name turns out to be a method it's called with the
+   * receiver directly rather than bound first. A field of the same name
+   * shadows the method, in which case this is just a Get followed by a call.
+   */
+  private Object invoke(Expr.Call exp, Expr.Get get, boolean tail) {
+    Object object = evaluate(get.object);
+    if (!(object instanceof FojInstance instance)) {
+      throw new RuntimeError(get.name, "Only instances have properties");
     }
 
-    // List<Object> arguments = exp.arguments.stream()
-    // .map(argument -> evaluate(argument))
-    // .toList();
-    List<Object> arguments = new ArrayList<>();
-    for (Expr argument : exp.arguments) {
-      arguments.add(evaluate(argument));
+    FojFunction method = findMethod(exp, instance, get.name.lexeme);
+    if (method == null) {
+      return call(exp, instance.get(get), tail);
+    }
+
+    if (exp.arguments.size() != method.arity()) {
+      throw arityMismatch(exp, method);
+    }
+    return execute(method, evaluateInto(method.frame(instance), exp), tail);
+  }
+
+  private FojFunction findMethod(Expr.Call site, FojInstance instance, String name) {
+    FojClass fojClass = instance.fojClass();
+    ClassLayout layout = fojClass.layout;
+    Shape shape = instance.shape();
+    MethodCache cache = site.methods;
+    for (MethodCache entry = cache; entry != null; entry = entry.next) {
+      if (entry.layout == layout && entry.shape == shape) {
+        return fojClass.method(entry.index);
+      }
+    }
+
+    if (instance.hasField(name)) {
+      return null;
+    }
+    int index = layout.indexOf(name);
+    if (index == -1) {
+      return null;
+    }
+    if (cache == null || cache.size < MethodCache.LIMIT) {
+      site.methods = new MethodCache(layout, shape, index, cache);
+    }
+    return fojClass.method(index);
+  }
+
+  private Object call(Expr.Call exp, Object callee, boolean tail) {
+    if (Fojaccia.isLoggable(LogLevel.DEBUG)) {
+      Fojaccia.Log(LogLevel.DEBUG, "visiting call expression, callee is: " + callee);
+      Fojaccia.Log(LogLevel.DEBUG, "callee class is: " + callee.getClass().getName());
+    }
+    if (!(callee instanceof FojCallable)) {
+      throw new RuntimeError(exp.paren, "Only functions and classes can be called");
     }
 
-    Fojaccia.Log(LogLevel.DEBUG, "argument list evaluated");
     FojCallable function = (FojCallable) callee;
+    List<Expr> arguments = exp.arguments;
     if (arguments.size() != function.arity()) {
-      throw new RuntimeError(exp.paren,
-          String.format("Expected %s arguments but got %s",
-              function.arity(), arguments.size()));
+      throw arityMismatch(exp, function);
+    }
+
+    // Functions and initializers get their arguments evaluated straight into
+    // the new frame, numbers unboxed
+    if (function instanceof FojFunction fojFunction) {
+      return execute(fojFunction, evaluateInto(fojFunction.frame(), exp), tail);
+    }
+    if (function instanceof FojClass fojClass) {
+      FojInstance instance = new FojInstance(fojClass);
+      FojFunction initializer = fojClass.initializer();
+      if (initializer != null) {
+        initializer.execute(this, evaluateInto(initializer.frame(instance), exp));
+      }
+      return instance;
     }
 
-    Fojaccia.Log(LogLevel.DEBUG, "now calling function");
-    return function.call(this, arguments);
+    try {
+      return switch (arguments.size()) {
+        case 0 -> function.call0(this);
+        case 1 -> function.call1(this, evaluate(arguments.get(0)));
+        case 2 -> function.call2(this, evaluate(arguments.get(0)), evaluate(arguments.get(1)));
+        case 3 -> function.call3(this, evaluate(arguments.get(0)), evaluate(arguments.get(1)),
+            evaluate(arguments.get(2)));
+        case 4 -> function.call4(this, evaluate(arguments.get(0)), evaluate(arguments.get(1)),
+            evaluate(arguments.get(2)), evaluate(arguments.get(3)));
+        default -> {
+          Object[] values = new Object[arguments.size()];
+          for (int i = 0; i < values.length; i++) {
+            values[i] = evaluate(arguments.get(i));
+          }
+          yield function.call(this, values);
+        }
+      };
+    } catch (NativeError error) {
+      throw new RuntimeError(exp.paren, error.getMessage());
+    }
   }
 
+  /**
+   * The callee and arguments are evaluated here, and the call is made on a
+   * task of its own, whose result goes nowhere.
+   */
   @Override
-  public Object visitUnary(Expr.Unary exp) {
-    Object right = evaluate(exp.right);
+  public Object visitSpawnStmt(Stmt.Spawn stmt) {
+    Expr.Call call = stmt.call;
+    Object callee = evaluate(call.callee);
+    if (!(callee instanceof FojCallable function)) {
+      throw new RuntimeError(call.paren, "Only functions and classes can be spawned");
+    }
+    if (call.arguments.size() != function.arity()) {
+      throw arityMismatch(call, function);
+    }
+    Object[] arguments = new Object[call.arguments.size()];
+    for (int i = 0; i < arguments.length; i++) {
+      arguments[i] = evaluate(call.arguments.get(i));
+    }
+
+    Interpreter task = new Interpreter(this);
+    tasks.spawn(() -> {
+      try {
+        function.call(task, arguments);
+      } catch (NativeError error) {
+        throw new RuntimeError(call.paren, error.getMessage());
+      }
+    });
+    return NORMAL;
+  }
+
+  private Object execute(FojFunction function, Environment frame, boolean tail) {
+    // A memoized function has to see its own result to cache it
+    if (tail && !function.isMemoized()) {
+      return new TailCall(function, frame);
+    }
+    return function.execute(this, frame);
+  }
+
+  private Environment evaluateInto(Environment frame, Expr.Call exp) {
+    List<Expr> arguments = exp.arguments;
+    for (int i = 0; i < arguments.size(); i++) {
+      Expr argument = arguments.get(i);
+      if (producesNumber(argument)) {
+        try {
+          frame.defineNumber(i, evaluateNumber(argument));
+        } catch (UnexpectedResult result) {
+          frame.define(i, result.value);
+        }
+      } else {
+        frame.define(i, evaluate(argument));
+      }
+    }
+    return frame;
+  }
 
-    switch (exp.operator.type) {
-      case BANG:
-        return !isTruthy(right);
-      case MINUS:
-        verifyNumberOperand(exp.operator, right);
-        return -(double) right;
-      default:
-        return null;
+  /**
+   * The arguments are still evaluated, for their side effects, before the
+   * mismatch is reported.
+   */
+  private RuntimeError arityMismatch(Expr.Call exp, FojCallable function) {
+    for (Expr argument : exp.arguments) {
+      evaluate(argument);
     }
+    return new RuntimeError(exp.paren,
+        String.format("Expected %s arguments but got %s",
+            function.arity(), exp.arguments.size()));
+  }
 
+  @Override
+  public Object visitUnary(Expr.Unary exp) {
+    return exp.node.execute(this, exp);
   }
 
   @Override
@@ -364,39 +613,168 @@ public class Interpreter implements
 
   @Override
   public Object visitLogical(Expr.Logical exp) {
-    Object left = evaluate(exp.left);
+    return exp.node.execute(this, exp);
+  }
 
-    if (exp.operator.type == TokenType.OR) {
-      if (isTruthy(left)) {
-        return left;
+  @Override
+  public Object visitWhileStmt(Stmt.While stmt) {
+    while (isTruthy(evaluate(stmt.condition))) {
+      Object completion = execute(stmt.body);
+      if (completion != NORMAL) {
+        return completion;
+      }
+
+      // On the back edge, a hot loop carries on in compiled code
+      if (Jit.enabled && !stmt.profile.failed) {
+        completion = Jit.enter(this, stmt, environment);
+        if (completion != null) {
+          return completion;
+        }
       }
+    }
+    return NORMAL;
+  }
+
+  private Object lookUpVariable(Token name, Expr.Reference expr) {
+    if (expr.depth != -1) {
+      return environment.getAt(expr.depth, expr.slot);
     } else {
-      if (!isTruthy(left)) {
-        return left;
+      return globals.get(name);
+    }
+  }
+
+  /**
+   * Evaluates an expression that is expected to produce a number, without
+   * boxing it. Throws UnexpectedResult, carrying the already evaluated value,
+   * when it doesn't.
+   */
+  double evaluateNumber(Expr exp) {
+    if (exp instanceof Expr.Binary binary) {
+      return binary.node.executeNumber(this, binary);
+    }
+    if (exp instanceof Expr.Variable variable) {
+      if (variable.depth == -1)
+        return globals.getNumber(variable.name);
+      return environment.getNumberAt(variable.depth, variable.slot);
+    }
+    if (exp instanceof Expr.Literal literal && literal.value instanceof Double number) {
+      return number;
+    }
+    if (exp instanceof Expr.Unary unary) {
+      return unary.node.executeNumber(this, unary);
+    }
+    if (exp instanceof Expr.Grouping grouping) {
+      return evaluateNumber(grouping.expression);
+    }
+    if (exp instanceof Expr.Get get) {
+      Object object = evaluate(get.object);
+      if (object instanceof FojInstance instance) {
+        return instance.getNumber(get);
       }
+      throw new RuntimeError(get.name, "Only instances have properties");
     }
 
-    return evaluate(exp.right);
+    return expectNumber(evaluate(exp));
   }
 
-  @Override
-  public Void visitWhileStmt(Stmt.While stmt) {
-    while (isTruthy(evaluate(stmt.condition))) {
-      execute(stmt.body);
+  static double expectNumber(Object value) {
+    if (value instanceof Double number)
+      return number;
+    throw new UnexpectedResult(value);
+  }
+
+  /**
+   * Whether the expression's specialization computes an unboxed number, so
+   * its result is worth storing unboxed.
+   */
+  private static boolean producesNumber(Expr exp) {
+    if (exp instanceof Expr.Binary binary)
+      return binary.node.producesNumber();
+    if (exp instanceof Expr.Unary unary)
+      return unary.node.producesNumber();
+    if (exp instanceof Expr.Grouping grouping)
+      return producesNumber(grouping.expression);
+    return false;
+  }
+
+  /**
+   * Stores a numeric value into a variable unboxed. If the value turns out
+   * not to be a number it is stored as is and the UnexpectedResult rethrown.
+   */
+  private double assignNumber(Expr.Assignment expr) {
+    double value;
+    try {
+      value = evaluateNumber(expr.value);
+    } catch (UnexpectedResult result) {
+      if (expr.depth != -1) {
+        environment.assignAt(expr.depth, expr.slot, result.value);
+      } else {
+        globals.assign(expr.name, result.value);
+      }
+      throw result;
+    }
+    if (expr.depth != -1) {
+      environment.assignNumberAt(expr.depth, expr.slot, value);
+    } else {
+      globals.assignNumber(expr.name, value);
     }
-    return null;
+    return value;
   }
 
-  private Object lookUpVariable(Token name, Expr expr) {
-    Integer distance = locals.get(expr);
-    if (distance != null) {
-      return environment.getAt(distance, name.lexeme);
+  private double setNumber(FojInstance instance, Expr.Set expr) {
+    try {
+      double value = evaluateNumber(expr.value);
+      instance.setNumber(expr, value);
+      return value;
+    } catch (UnexpectedResult result) {
+      instance.set(expr, result.value);
+      throw result;
+    }
+  }
+
+  /**
+   * Runs a statement-level assignment of a number without boxing the result
+   * nobody reads. Returns false, having done nothing, for anything else.
+   */
+  private boolean assignNumberForEffect(Expr exp) {
+    if (exp instanceof Expr.Assignment assignment && producesNumber(assignment.value)) {
+      try {
+        assignNumber(assignment);
+      } catch (UnexpectedResult ignored) {
+        // Already stored as a regular value
+      }
+      return true;
+    }
+
+    if (exp instanceof Expr.Set set && producesNumber(set.value)) {
+      Object object = evaluate(set.object);
+      if (!(object instanceof FojInstance)) {
+        throw new RuntimeError(set.name, "Only instances have fields");
+      }
+      try {
+        setNumber((FojInstance) object, set);
+      } catch (UnexpectedResult ignored) {
+        // Already stored as a regular value
+      }
+      return true;
+    }
+
+    return false;
+  }
+
+  private void define(Token name, int slot, Object value) {
+    define(name, slot, value, false);
+  }
+
+  private void define(Token name, int slot, Object value, boolean constant) {
+    if (slot == -1) {
+      environment.define(name, value, constant);
     } else {
-      return globals.get(name);
+      environment.define(slot, value);
     }
   }
 
-  private String makeTreeString(Object tree) {
+  static String makeTreeString(Object tree) {
     if (tree == null)
       return "null";
 
@@ -411,18 +789,18 @@ public class Interpreter implements
     return tree.toString();
   }
 
-  private void verifyNumberOperands(Token operator, Object left, Object right) {
+  static void verifyNumberOperands(Token operator, Object left, Object right) {
     verifyNumberOperand(operator, left);
     verifyNumberOperand(operator, right);
   }
 
-  private void verifyNumberOperand(Token operator, Object operand) {
+  static void verifyNumberOperand(Token operator, Object operand) {
     if (operand instanceof Double)
       return;
     throw new RuntimeError(operator, "Operand must be a number");
   }
 
-  private boolean isEqual(Object a, Object b) {
+  static boolean isEqual(Object a, Object b) {
     if (a == null && b == null)
       return true;
 
@@ -432,7 +810,7 @@ public class Interpreter implements
     return a.equals(b);
   }
 
-  private boolean isTruthy(Object object) {
+  static boolean isTruthy(Object object) {
     if (object == null)
       return false;
 
@@ -442,7 +820,7 @@ public class Interpreter implements
     return true;
   }
 
-  private Object evaluate(Expr exp) {
+  Object evaluate(Expr exp) {
     return exp.accept(this);
   }
 }
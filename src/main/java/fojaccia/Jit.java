@@ -0,0 +1,123 @@
+package fojaccia;
+
+import java.lang.invoke.MethodHandles;
+
+import fojaccia.Fojaccia.LogLevel;
+
+/**
+ * Decides what runs in which tier. Everything starts out in the tree walker,
+ * whose nodes specialize themselves as they go. Functions count their calls
+ * and loops their iterations, and once either crosses its threshold it gets
+ * compiled to JVM bytecode (see JitCompiler), into a hidden class the JVM is
+ * then free to inline and optimize like any other code.
+ *
+ * A compiled function runs from its next call on. A compiled loop takes over
+ * at the top of its next iteration, so a long-running loop, at the top level
+ * or not, moves to compiled code while it runs (on-stack replacement). When
+ * compiled code turns out not to fit anymore, it's dropped and the code
+ * starts counting again, a few times before it's left in the tree walker
+ * for good.
+ *
+ * Tier changes are logged at DEBUG. Thresholds can be set with
+ * -Dfoj.jit.calls and -Dfoj.jit.iterations, and compiling turned off with
+ * -Dfoj.jit=false.
+ */
+final class Jit {
+  static final boolean enabled = !"false".equalsIgnoreCase(System.getProperty("foj.jit"));
+
+  private static final int CALL_THRESHOLD = Integer.getInteger("foj.jit.calls", 1000);
+  private static final int ITERATION_THRESHOLD = Integer.getInteger("foj.jit.iterations", 1000);
+  // Compiled code that keeps getting thrown away isn't worth recompiling
+  private static final int MAX_DEOPTS = 3;
+
+  private Jit() {
+  }
+
+  /**
+   * Runs the function's compiled code on the arguments in the frame,
+   * compiling it first if it has just become hot. Returns null, having done
+   * nothing, if the call has to be interpreted; compiled code always returns
+   * a number.
+   */
+  static Object enter(Interpreter interpreter, Stmt.Function declaration, Environment frame) {
+    Profile profile = declaration.profile;
+    if (profile.code == null) {
+      if (profile.failed || ++profile.count < CALL_THRESHOLD)
+        return null;
+      compile(profile, new JitCompiler(declaration, interpreter.globals, interpreter.repl),
+          "`" + declaration.name.lexeme + "`", declaration.name.line, "calls");
+    }
+    return run(profile, frame, interpreter.globals, "`" + declaration.name.lexeme + "`",
+        declaration.name.line);
+  }
+
+  /**
+   * Runs the rest of a loop in compiled code, from the top of an iteration,
+   * compiling it first if it has just become hot. Returns the loop's
+   * completion, or null, having done nothing, if it has to carry on in the
+   * interpreter.
+   */
+  static Object enter(Interpreter interpreter, Stmt.While loop, Environment environment) {
+    Profile profile = loop.profile;
+    if (profile.code == null) {
+      if (profile.failed || ++profile.count < ITERATION_THRESHOLD)
+        return null;
+      compile(profile, new JitCompiler(loop, environment, interpreter.globals, interpreter.repl),
+          "loop", loop.keyword.line, "iterations");
+    }
+    return run(profile, environment, interpreter.globals, "loop", loop.keyword.line);
+  }
+
+  private static Object run(Profile profile, Environment frame, Environment globals,
+      String name, int line) {
+    JitCode code = profile.code;
+    if (code == null)
+      return null;
+
+    if (!code.valid(globals)) {
+      deoptimize(profile, name, line, "a function it calls has been redefined");
+      return null;
+    }
+    try {
+      return code.enter(frame, globals);
+    } catch (UnexpectedResult result) {
+      deoptimize(profile, name, line, "it was entered with a value of another type");
+      return null;
+    }
+  }
+
+  private static void compile(Profile profile, JitCompiler compiler, String name, int line,
+      String counted) {
+    try {
+      byte[] bytes = compiler.compile();
+      MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+      JitCode code = (JitCode) lookup.lookupClass().getDeclaredConstructor().newInstance();
+      code.link(compiler.dependencyNames(), compiler.dependencyTargets());
+      profile.code = code;
+
+      if (Fojaccia.isLoggable(LogLevel.DEBUG)) {
+        Fojaccia.Log(LogLevel.DEBUG, line, "jit: " + name + " interpreted -> compiled after "
+            + profile.count + " " + counted + " (" + compiler.size() + " functions, "
+            + bytes.length + " bytes)");
+      }
+    } catch (JitCompiler.NotCompilable e) {
+      profile.failed = true;
+      if (Fojaccia.isLoggable(LogLevel.DEBUG)) {
+        Fojaccia.Log(LogLevel.DEBUG, line, "jit: " + name + " stays interpreted: it " + e.getMessage());
+      }
+    } catch (ReflectiveOperationException | LinkageError e) {
+      profile.failed = true;
+      Fojaccia.Log(LogLevel.WARNING, line, "jit: failed to compile " + name + ": " + e);
+    }
+  }
+
+  private static void deoptimize(Profile profile, String name, int line, String reason) {
+    profile.code = null;
+    profile.count = 0;
+    profile.failed = ++profile.deopts >= MAX_DEOPTS;
+    if (Fojaccia.isLoggable(LogLevel.DEBUG)) {
+      Fojaccia.Log(LogLevel.DEBUG, line, "jit: " + name + " compiled -> interpreted: " + reason
+          + (profile.failed ? ", for good" : ""));
+    }
+  }
+}
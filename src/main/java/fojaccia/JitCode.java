@@ -0,0 +1,66 @@
+package fojaccia;
+
+/**
+ * Superclass of the classes the Jit generates. Each one holds a function or
+ * a loop, along with every global function it calls, compiled into static
+ * methods that call each other directly.
+ *
+ * Calling them directly is only right while those globals still refer to
+ * the functions that were compiled, so every entry from the interpreter goes
+ * through {@link #valid}. Compiled code only assigns globals on its way out,
+ * so a check on the way in covers the whole run.
+ */
+abstract class JitCode {
+  private String[] names;
+  private Stmt.Function[] targets;
+  // The globals last found to match, as of which version. Several Contexts
+  // can be running the code at once, each with globals of its own, so the
+  // two are swapped together rather than torn between threads
+  private record Checked(Environment globals, int version) {
+  }
+
+  private Checked checked;
+
+  /**
+   * Runs the compiled function on the arguments in the frame, or the
+   * compiled loop from the frame it runs in. A loop returns its completion,
+   * as the Interpreter would. Throws UnexpectedResult, before doing anything
+   * else, if a value it reads in isn't of the type it was compiled for.
+   */
+  abstract Object enter(Environment frame, Environment globals);
+
+  // Called from compiled code to read in values
+  static double number(Object value) {
+    if (value instanceof Double number)
+      return number;
+    throw new UnexpectedResult(value);
+  }
+
+  static boolean bool(Object value) {
+    if (value instanceof Boolean bool)
+      return bool;
+    throw new UnexpectedResult(value);
+  }
+
+  void link(String[] names, Stmt.Function[] targets) {
+    this.names = names;
+    this.targets = targets;
+  }
+
+  boolean valid(Environment globals) {
+    // Read before looking, so a change made while looking isn't missed
+    int version = globals.version();
+    Checked checked = this.checked;
+    if (checked != null && globals == checked.globals && version == checked.version)
+      return true;
+
+    for (int i = 0; i < names.length; i++) {
+      if (!(globals.peek(names[i]) instanceof FojFunction function)
+          || function.declaration() != targets[i]) {
+        return false;
+      }
+    }
+    this.checked = new Checked(globals, version);
+    return true;
+  }
+}
@@ -0,0 +1,838 @@
+package fojaccia;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import fojaccia.ClassAssembler.Label;
+import fojaccia.ClassAssembler.Opcodes;
+
+/**
+ * Translates a function, and every global function it calls, into the
+ * static methods of one JVM class. Only numeric code makes it through:
+ * parameters and results are unboxed doubles, locals are doubles or
+ * booleans, and anything that would need a dynamic type check, touch the
+ * heap or have a side effect (printing, globals, instances, closures) makes
+ * the function uncompilable.
+ *
+ * Tail calls to itself become jumps, but tail calls to other functions are
+ * plain JVM calls, so a function that can get back to itself through one,
+ * which the interpreter would run in constant stack, isn't compiled.
+ *
+ * Since what's left can't observe anything but its arguments, the only thing
+ * compiled code assumes about the world is which declarations the called
+ * globals refer to. Those are recorded for JitCode to check.
+ *
+ * A loop is compiled the same way, for on-stack replacement. The variables
+ * it uses from outside are typed by the values they hold when it's compiled,
+ * read into JVM locals when it's entered and written back when it's left.
+ * Nothing else can see them in between, since the functions it calls can't.
+ */
+final class JitCompiler implements Expr.Visitor<JitCompiler.Type>, Stmt.Visitor<Void> {
+  private static final String CODE = "fojaccia/JitCode";
+  private static final String ENVIRONMENT = "fojaccia/Environment";
+  private static final String ENTER =
+      "(L" + ENVIRONMENT + ";L" + ENVIRONMENT + ";)Ljava/lang/Object;";
+  // Jumps are 16-bit offsets
+  private static final int MAX_CODE_SIZE = Short.MAX_VALUE;
+
+  enum Type {
+    NUMBER(2, Opcodes.DLOAD, Opcodes.DSTORE, Opcodes.POP2, Opcodes.DUP2),
+    BOOLEAN(1, Opcodes.ILOAD, Opcodes.ISTORE, Opcodes.POP, Opcodes.DUP);
+
+    final int size;
+    final int load;
+    final int store;
+    final int pop;
+    final int dup;
+
+    Type(int size, int load, int store, int pop, int dup) {
+      this.size = size;
+      this.load = load;
+      this.store = store;
+      this.pop = pop;
+      this.dup = dup;
+    }
+  }
+
+  /**
+   * Why a function can't be compiled.
+   */
+  static final class NotCompilable extends RuntimeException {
+    NotCompilable(String reason) {
+      super(reason, null, false, false);
+    }
+  }
+
+  /**
+   * The JVM local holding a variable. One from outside a compiled loop also
+   * knows where it gets read from and written back to.
+   */
+  private static final class Local {
+    final int index;
+    final Type type;
+    // For variables from outside a loop: the global's name, or the local's
+    // position relative to the loop's environment
+    String global;
+    int depth;
+    int slot;
+    boolean assigned = false;
+
+    Local(int index, Type type) {
+      this.index = index;
+      this.type = type;
+    }
+  }
+
+  private final Environment globals;
+  // The REPL prints the value of every expression statement
+  private final boolean repl;
+  // Only set when compiling a loop
+  private final Stmt.While loop;
+  private final Environment frame;
+  private final Map<String, Local> outside = new LinkedHashMap<>();
+  private final ClassAssembler assembler;
+  // Every function in the class, in method order; the first is the one
+  // being compiled
+  private final Map<Stmt.Function, Integer> functions = new LinkedHashMap<>();
+  private final Map<String, Stmt.Function> dependencies = new LinkedHashMap<>();
+  // What each function calls, and the tail calls among those that aren't
+  // to itself, as caller and callee
+  private final Map<Stmt.Function, Set<Stmt.Function>> calls = new HashMap<>();
+  private final List<Stmt.Function[]> tailCalls = new ArrayList<>();
+
+  private ClassAssembler.Code code;
+  // The function being compiled, null while compiling the loop
+  private Stmt.Function function;
+  private Label start;
+  private final List<Local[]> scopes = new ArrayList<>();
+  private boolean reachable;
+  // Where a compiled loop leaves from, with its completion in `result`
+  private Label exit;
+  private int result;
+
+  JitCompiler(Stmt.Function function, Environment globals, boolean repl) {
+    this.globals = globals;
+    this.repl = repl;
+    this.loop = null;
+    this.frame = null;
+    this.assembler = new ClassAssembler("fojaccia/Compiled$" + function.name.lexeme, CODE);
+    functions.put(function, 0);
+  }
+
+  /**
+   * Compiles a loop to be entered at its condition, from the environment it
+   * runs in.
+   */
+  JitCompiler(Stmt.While loop, Environment frame, Environment globals, boolean repl) {
+    this.globals = globals;
+    this.repl = repl;
+    this.loop = loop;
+    this.frame = frame;
+    this.assembler = new ClassAssembler("fojaccia/Compiled$loop" + loop.keyword.line, CODE);
+  }
+
+  /**
+   * Returns the class file, or throws NotCompilable.
+   */
+  byte[] compile() {
+    constructor();
+    if (loop != null) {
+      loop();
+    } else {
+      entry(functions.keySet().iterator().next());
+    }
+
+    // Compiling a body can add the functions it calls to the end
+    List<Stmt.Function> compiled = new ArrayList<>();
+    while (compiled.size() < functions.size()) {
+      Stmt.Function function = new ArrayList<>(functions.keySet()).get(compiled.size());
+      method(function);
+      compiled.add(function);
+    }
+
+    for (Stmt.Function[] tailCall : tailCalls) {
+      if (reaches(tailCall[1], tailCall[0], new HashSet<>()))
+        throw new NotCompilable("recurses through a tail call to `" + tailCall[1].name.lexeme + "`");
+    }
+    return assembler.toByteArray();
+  }
+
+  private boolean reaches(Stmt.Function from, Stmt.Function to, Set<Stmt.Function> seen) {
+    if (from == to)
+      return true;
+    if (!seen.add(from))
+      return false;
+    for (Stmt.Function callee : calls.getOrDefault(from, Set.of())) {
+      if (reaches(callee, to, seen))
+        return true;
+    }
+    return false;
+  }
+
+  String[] dependencyNames() {
+    return dependencies.keySet().toArray(new String[0]);
+  }
+
+  Stmt.Function[] dependencyTargets() {
+    return dependencies.values().toArray(new Stmt.Function[0]);
+  }
+
+  int size() {
+    return functions.size();
+  }
+
+  private void constructor() {
+    ClassAssembler.Code init = assembler.method(ClassAssembler.ACC_PUBLIC, "<init>", "()V", 1);
+    init.local(Opcodes.ALOAD, 0, 1);
+    init.invoke(Opcodes.INVOKESPECIAL, CODE, "<init>", "()V", -1);
+    init.op(Opcodes.RETURN, 0);
+  }
+
+  // Object enter(Environment frame, Environment globals): unboxes the
+  // arguments and boxes the result
+  private void entry(Stmt.Function root) {
+    ClassAssembler.Code enter = assembler.method(0, "enter", ENTER, 3);
+    int arity = root.params.size();
+    for (int i = 0; i < arity; i++) {
+      enter.local(Opcodes.ALOAD, 1, 1);
+      enter.op(Opcodes.ICONST_0, 1);
+      enter.intConstant(i);
+      enter.invoke(Opcodes.INVOKEVIRTUAL, ENVIRONMENT, "getNumberAt", "(II)D", -1);
+    }
+    enter.invoke(Opcodes.INVOKESTATIC, assembler.name(), "m0", descriptor(arity), 2 - 2 * arity);
+    enter.invoke(Opcodes.INVOKESTATIC, "java/lang/Double", "valueOf", "(D)Ljava/lang/Double;", -1);
+    enter.op(Opcodes.ARETURN, -1);
+  }
+
+  /**
+   * Object enter(Environment frame, Environment globals) for a loop. The code
+   * reading in the variables from outside goes last, once they're all known,
+   * and jumps back up to the loop:
+   *
+   *   goto prologue
+   *   body:     the loop, and on the way out, the completion into `result`
+   *   exit:     write back what the loop assigned; return result
+   *   prologue: read in the variables; goto body
+   */
+  private void loop() {
+    code = assembler.method(0, "enter", ENTER, 3);
+    result = code.newLocal(1);
+    Label prologue = new Label();
+    Label body = new Label();
+    exit = new Label();
+
+    code.jump(Opcodes.GOTO, prologue, 0);
+    code.place(body);
+    reachable = true;
+    visitWhileStmt(loop);
+    if (reachable) {
+      code.getStatic("fojaccia/Interpreter", "NORMAL", "Ljava/lang/Object;", 1);
+      code.local(Opcodes.ASTORE, result, -1);
+    }
+
+    code.place(exit);
+    for (Local local : outside.values()) {
+      if (local.assigned) {
+        writeBack(local);
+      }
+    }
+    code.local(Opcodes.ALOAD, result, 1);
+    code.op(Opcodes.ARETURN, -1);
+
+    code.place(prologue);
+    for (Local local : outside.values()) {
+      readIn(local);
+    }
+    code.jump(Opcodes.GOTO, body, 0);
+
+    if (code.size() > MAX_CODE_SIZE)
+      throw new NotCompilable("too large");
+  }
+
+  private void readIn(Local local) {
+    if (local.global != null) {
+      code.local(Opcodes.ALOAD, 2, 1);
+      code.stringConstant(local.global);
+      code.invoke(Opcodes.INVOKEVIRTUAL, ENVIRONMENT, "peek", "(Ljava/lang/String;)Ljava/lang/Object;", -1);
+      unbox(local.type);
+    } else if (local.type == Type.NUMBER) {
+      position(local);
+      code.invoke(Opcodes.INVOKEVIRTUAL, ENVIRONMENT, "getNumberAt", "(II)D", -1);
+    } else {
+      position(local);
+      code.invoke(Opcodes.INVOKEVIRTUAL, ENVIRONMENT, "getAt", "(II)Ljava/lang/Object;", -2);
+      unbox(local.type);
+    }
+    code.local(local.type.store, local.index, -local.type.size);
+  }
+
+  private void writeBack(Local local) {
+    if (local.global != null) {
+      code.local(Opcodes.ALOAD, 2, 1);
+      code.stringConstant(local.global);
+      code.local(local.type.load, local.index, local.type.size);
+      box(local.type);
+      code.invoke(Opcodes.INVOKEVIRTUAL, ENVIRONMENT, "define", "(Ljava/lang/String;Ljava/lang/Object;)V", -3);
+    } else if (local.type == Type.NUMBER) {
+      position(local);
+      code.local(Opcodes.DLOAD, local.index, 2);
+      code.invoke(Opcodes.INVOKEVIRTUAL, ENVIRONMENT, "assignNumberAt", "(IID)V", -5);
+    } else {
+      position(local);
+      code.local(Opcodes.ILOAD, local.index, 1);
+      box(local.type);
+      code.invoke(Opcodes.INVOKEVIRTUAL, ENVIRONMENT, "assignAt", "(IILjava/lang/Object;)V", -4);
+    }
+  }
+
+  // frame, depth, slot
+  private void position(Local local) {
+    code.local(Opcodes.ALOAD, 1, 1);
+    code.intConstant(local.depth);
+    code.intConstant(local.slot);
+  }
+
+  private void box(Type type) {
+    if (type == Type.NUMBER) {
+      code.invoke(Opcodes.INVOKESTATIC, "java/lang/Double", "valueOf", "(D)Ljava/lang/Double;", -1);
+    } else {
+      code.invoke(Opcodes.INVOKESTATIC, "java/lang/Boolean", "valueOf", "(Z)Ljava/lang/Boolean;", 0);
+    }
+  }
+
+  // Throws UnexpectedResult if the value isn't of the type
+  private void unbox(Type type) {
+    if (type == Type.NUMBER) {
+      code.invoke(Opcodes.INVOKESTATIC, CODE, "number", "(Ljava/lang/Object;)D", 1);
+    } else {
+      code.invoke(Opcodes.INVOKESTATIC, CODE, "bool", "(Ljava/lang/Object;)Z", 0);
+    }
+  }
+
+  private void method(Stmt.Function function) {
+    int arity = function.params.size();
+    this.function = function;
+    code = assembler.method(ClassAssembler.ACC_STATIC, "m" + functions.get(function),
+        descriptor(arity), 2 * arity);
+    start = new Label();
+    code.place(start);
+
+    // Parameters take the first slots of the function's scope
+    Local[] scope = new Local[function.scopeSize];
+    for (int i = 0; i < arity; i++) {
+      scope[i] = new Local(2 * i, Type.NUMBER);
+    }
+    scopes.add(scope);
+    reachable = true;
+    compile(function.body);
+    scopes.remove(scopes.size() - 1);
+
+    if (reachable)
+      throw new NotCompilable("can finish without returning a number");
+    if (code.size() > MAX_CODE_SIZE)
+      throw new NotCompilable("too large");
+  }
+
+  private static String descriptor(int arity) {
+    return "(" + "D".repeat(arity) + ")D";
+  }
+
+  @Override
+  public Void visitExpressionStmt(Stmt.Expression stmt) {
+    if (repl)
+      throw new NotCompilable("prints");
+    Type type = compile(stmt.expression);
+    code.op(type.pop, -type.size);
+    return null;
+  }
+
+  @Override
+  public Void visitPrintStmt(Stmt.Print stmt) {
+    throw new NotCompilable("prints");
+  }
+
+  @Override
+  public Void visitReturnStmt(Stmt.Return stmt) {
+    reachable = false;
+    if (function == null) {
+      // Out of a loop inside a function: the completion is the returned value
+      if (stmt.value == null)
+        throw new NotCompilable("returns nothing");
+      box(compile(stmt.value));
+      code.local(Opcodes.ASTORE, result, -1);
+      code.jump(Opcodes.GOTO, exit, 0);
+      return null;
+    }
+
+    if (stmt.tailCall != null && target(stmt.tailCall) == function) {
+      // A tail call to itself reuses the frame: the arguments replace the
+      // parameters and it starts over
+      arguments(stmt.tailCall);
+      for (int i = stmt.tailCall.arguments.size() - 1; i >= 0; i--) {
+        code.local(Opcodes.DSTORE, 2 * i, -2);
+      }
+      code.jump(Opcodes.GOTO, start, 0);
+      return null;
+    }
+
+    if (stmt.value == null || compile(stmt.value) != Type.NUMBER)
+      throw new NotCompilable("doesn't return a number");
+    if (stmt.tailCall != null) {
+      tailCalls.add(new Stmt.Function[] { function, target(stmt.tailCall) });
+    }
+    code.op(Opcodes.DRETURN, -2);
+    return null;
+  }
+
+  @Override
+  public Void visitIfStmt(Stmt.If stmt) {
+    Label otherwise = new Label();
+    branch(stmt.condition, false, otherwise);
+    compile(stmt.thenBranch);
+    boolean thenCompletes = reachable;
+
+    if (stmt.elseBranch == null) {
+      reachable = thenCompletes || otherwise.used();
+      code.place(otherwise);
+      return null;
+    }
+
+    Label end = new Label();
+    if (thenCompletes) {
+      code.jump(Opcodes.GOTO, end, 0);
+    }
+    reachable = otherwise.used();
+    code.place(otherwise);
+    if (reachable) {
+      compile(stmt.elseBranch);
+    }
+    code.place(end);
+    reachable |= thenCompletes;
+    return null;
+  }
+
+  @Override
+  public Void visitWhileStmt(Stmt.While stmt) {
+    Label top = new Label();
+    Label end = new Label();
+    code.place(top);
+    branch(stmt.condition, false, end);
+    compile(stmt.body);
+    if (reachable) {
+      code.jump(Opcodes.GOTO, top, 0);
+    }
+    // Only a condition that can be falsey gets out the bottom
+    reachable = end.used();
+    code.place(end);
+    return null;
+  }
+
+  @Override
+  public Void visitVarStmt(Stmt.Var stmt) {
+    if (stmt.slot == -1)
+      throw new NotCompilable("declares a global");
+    if (stmt.initializer == null)
+      throw new NotCompilable("declares a variable without a value");
+
+    Type type = compile(stmt.initializer);
+    Local local = new Local(code.newLocal(type.size), type);
+    scopes.get(scopes.size() - 1)[stmt.slot] = local;
+    code.local(type.store, local.index, -type.size);
+    return null;
+  }
+
+  @Override
+  public Void visitBlockStmt(Stmt.Block stmt) {
+    scopes.add(new Local[stmt.scopeSize]);
+    compile(stmt.statements);
+    scopes.remove(scopes.size() - 1);
+    return null;
+  }
+
+  @Override
+  public Void visitClassStmt(Stmt.Class stmt) {
+    throw new NotCompilable("declares a class");
+  }
+
+  @Override
+  public Void visitImportStmt(Stmt.Import stmt) {
+    throw new NotCompilable("imports a module");
+  }
+
+  @Override
+  public Void visitSpawnStmt(Stmt.Spawn stmt) {
+    throw new NotCompilable("spawns a task");
+  }
+
+  @Override
+  public Void visitFunctionStmt(Stmt.Function stmt) {
+    throw new NotCompilable("declares a function");
+  }
+
+  @Override
+  public Type visitBinary(Expr.Binary exp) {
+    switch (exp.operator.type) {
+      case PLUS:
+        return arithmetic(exp, Opcodes.DADD);
+      case MINUS:
+        return arithmetic(exp, Opcodes.DSUB);
+      case STAR:
+        return arithmetic(exp, Opcodes.DMUL);
+      case SLASH:
+        return arithmetic(exp, Opcodes.DDIV);
+      default:
+        return condition(exp);
+    }
+  }
+
+  @Override
+  public Type visitUnary(Expr.Unary exp) {
+    if (exp.operator.type == TokenType.MINUS) {
+      if (compile(exp.right) != Type.NUMBER)
+        throw new NotCompilable("negates a non-number");
+      code.op(Opcodes.DNEG, 0);
+      return Type.NUMBER;
+    }
+    return condition(exp);
+  }
+
+  @Override
+  public Type visitLogical(Expr.Logical exp) {
+    Type left = typeOf(exp.left);
+    Type right = typeOf(exp.right);
+    if (left != right)
+      throw new NotCompilable("mixes types in `" + exp.operator.lexeme + "`");
+    if (left == Type.BOOLEAN)
+      return condition(exp);
+
+    // Numbers are always truthy: `or` is its left operand, `and` its right
+    compile(exp.left);
+    if (exp.operator.type == TokenType.AND) {
+      code.op(Opcodes.POP2, -2);
+      compile(exp.right);
+    }
+    return Type.NUMBER;
+  }
+
+  @Override
+  public Type visitGrouping(Expr.Grouping exp) {
+    return compile(exp.expression);
+  }
+
+  @Override
+  public Type visitLiteral(Expr.Literal exp) {
+    if (exp.value instanceof Double number) {
+      code.doubleConstant(number);
+      return Type.NUMBER;
+    }
+    if (exp.value instanceof Boolean bool) {
+      code.op(bool ? Opcodes.ICONST_1 : Opcodes.ICONST_0, 1);
+      return Type.BOOLEAN;
+    }
+    throw new NotCompilable("uses a value that isn't a number or boolean");
+  }
+
+  @Override
+  public Type visitVariable(Expr.Variable exp) {
+    // A global const can't change, so its value is as good as a literal
+    if (exp.depth == -1 && exp.constant != null
+        && exp.constant.initializer instanceof Expr.Literal literal)
+      return visitLiteral(literal);
+
+    Local local = local(exp, exp.name);
+    code.local(local.type.load, local.index, local.type.size);
+    return local.type;
+  }
+
+  @Override
+  public Type visitAssignment(Expr.Assignment exp) {
+    Local local = local(exp, exp.name);
+    if (compile(exp.value) != local.type)
+      throw new NotCompilable("changes the type of `" + exp.name.lexeme + "`");
+    local.assigned = true;
+    code.op(local.type.dup, local.type.size);
+    code.local(local.type.store, local.index, -local.type.size);
+    return local.type;
+  }
+
+  @Override
+  public Type visitCall(Expr.Call exp) {
+    Stmt.Function target = target(exp);
+    if (function != null) {
+      calls.computeIfAbsent(function, caller -> new HashSet<>()).add(target);
+    }
+    arguments(exp);
+    int arity = exp.arguments.size();
+    code.invoke(Opcodes.INVOKESTATIC, assembler.name(), "m" + functions.get(target),
+        descriptor(arity), 2 - 2 * arity);
+    return Type.NUMBER;
+  }
+
+  @Override
+  public Type visitGet(Expr.Get exp) {
+    throw new NotCompilable("reads a property");
+  }
+
+  @Override
+  public Type visitSet(Expr.Set exp) {
+    throw new NotCompilable("sets a property");
+  }
+
+  @Override
+  public Type visitThis(Expr.This exp) {
+    throw new NotCompilable("uses `this`");
+  }
+
+  @Override
+  public Type visitSuper(Expr.Super exp) {
+    throw new NotCompilable("uses `super`");
+  }
+
+  /**
+   * The function a call reaches, given what its name refers to now. Adds it
+   * to the class if it isn't already, and records the name for JitCode to
+   * check.
+   */
+  private Stmt.Function target(Expr.Call exp) {
+    if (!(exp.callee instanceof Expr.Variable variable) || variable.depth != -1)
+      throw new NotCompilable("calls something other than a global function");
+
+    String name = variable.name.lexeme;
+    if (!(globals.peek(name) instanceof FojFunction callee)
+        || callee.isInitializer() || callee.isMemoized())
+      throw new NotCompilable("calls `" + name + "`, which isn't a plain function");
+    if (callee.arity() != exp.arguments.size())
+      throw new NotCompilable("calls `" + name + "` with the wrong number of arguments");
+
+    Stmt.Function target = callee.declaration();
+    dependencies.put(name, target);
+    functions.putIfAbsent(target, functions.size());
+    return target;
+  }
+
+  private void arguments(Expr.Call exp) {
+    for (Expr argument : exp.arguments) {
+      if (compile(argument) != Type.NUMBER)
+        throw new NotCompilable("passes something other than a number");
+    }
+  }
+
+  private Type arithmetic(Expr.Binary exp, int opcode) {
+    if (compile(exp.left) != Type.NUMBER || compile(exp.right) != Type.NUMBER)
+      throw new NotCompilable("uses `" + exp.operator.lexeme + "` on something other than numbers");
+    code.op(opcode, -2);
+    return Type.NUMBER;
+  }
+
+  /**
+   * Materializes a comparison or logical expression as a boolean.
+   */
+  private Type condition(Expr exp) {
+    Label isFalse = new Label();
+    Label end = new Label();
+    branch(exp, false, isFalse);
+    code.op(Opcodes.ICONST_1, 1);
+    code.jump(Opcodes.GOTO, end, 0);
+    code.place(isFalse);
+    code.op(Opcodes.ICONST_0, 1);
+    code.place(end);
+    return Type.BOOLEAN;
+  }
+
+  /**
+   * Jumps to the target when the expression's truthiness is {@code when},
+   * without materializing it where that can be avoided.
+   */
+  private void branch(Expr exp, boolean when, Label target) {
+    if (exp instanceof Expr.Grouping grouping) {
+      branch(grouping.expression, when, target);
+      return;
+    }
+
+    if (exp instanceof Expr.Unary unary && unary.operator.type == TokenType.BANG) {
+      branch(unary.right, !when, target);
+      return;
+    }
+
+    if (exp instanceof Expr.Logical logical) {
+      // `a and b` is falsey if either is; `a or b` truthy if either is
+      boolean shortCircuit = logical.operator.type == TokenType.OR;
+      if (when == shortCircuit) {
+        branch(logical.left, when, target);
+        branch(logical.right, when, target);
+      } else {
+        Label skip = new Label();
+        branch(logical.left, !when, skip);
+        branch(logical.right, when, target);
+        code.place(skip);
+      }
+      return;
+    }
+
+    if (exp instanceof Expr.Binary binary) {
+      switch (binary.operator.type) {
+        case LESS:
+          compare(binary, Opcodes.DCMPG, when ? Opcodes.IFLT : Opcodes.IFGE, target);
+          return;
+        case LESS_EQUAL:
+          compare(binary, Opcodes.DCMPG, when ? Opcodes.IFLE : Opcodes.IFGT, target);
+          return;
+        case GREATER:
+          compare(binary, Opcodes.DCMPL, when ? Opcodes.IFGT : Opcodes.IFLE, target);
+          return;
+        case GREATER_EQUAL:
+          compare(binary, Opcodes.DCMPL, when ? Opcodes.IFGE : Opcodes.IFLT, target);
+          return;
+        case EQUAL_EQUAL:
+          equality(binary, when, target);
+          return;
+        case BANG_EQUAL:
+          equality(binary, !when, target);
+          return;
+        default:
+          break;
+      }
+    }
+
+    Type type = compile(exp);
+    if (type == Type.BOOLEAN) {
+      code.jump(when ? Opcodes.IFNE : Opcodes.IFEQ, target, -1);
+    } else {
+      // A number is always truthy
+      code.op(Opcodes.POP2, -2);
+      if (when) {
+        code.jump(Opcodes.GOTO, target, 0);
+      }
+    }
+  }
+
+  // dcmpg for < and <=, dcmpl for > and >=, so a NaN operand comes out false
+  private void compare(Expr.Binary exp, int compare, int jump, Label target) {
+    if (compile(exp.left) != Type.NUMBER || compile(exp.right) != Type.NUMBER)
+      throw new NotCompilable("compares something other than numbers");
+    code.op(compare, -3);
+    code.jump(jump, target, -1);
+  }
+
+  /**
+   * Jumps when the operands' equality is {@code when}. Numbers compare the
+   * way Double.equals does, which is what the interpreter uses: NaN equals
+   * itself and 0 doesn't equal -0.
+   */
+  private void equality(Expr.Binary exp, boolean when, Label target) {
+    Type left = compile(exp.left);
+    Type right = compile(exp.right);
+    if (left != right) {
+      // Values of different types are never equal
+      code.op(right.pop, -right.size);
+      code.op(left.pop, -left.size);
+      if (!when) {
+        code.jump(Opcodes.GOTO, target, 0);
+      }
+      return;
+    }
+
+    if (left == Type.NUMBER) {
+      code.invoke(Opcodes.INVOKESTATIC, "java/lang/Double", "compare", "(DD)I", -3);
+      code.jump(when ? Opcodes.IFEQ : Opcodes.IFNE, target, -1);
+    } else {
+      code.jump(when ? Opcodes.IF_ICMPEQ : Opcodes.IF_ICMPNE, target, -2);
+    }
+  }
+
+  /**
+   * The type an expression would compile to, worked out without emitting
+   * anything.
+   */
+  private Type typeOf(Expr exp) {
+    if (exp instanceof Expr.Grouping grouping)
+      return typeOf(grouping.expression);
+    if (exp instanceof Expr.Literal literal)
+      return literal.value instanceof Boolean ? Type.BOOLEAN : Type.NUMBER;
+    if (exp instanceof Expr.Variable variable && variable.constant == null)
+      return local(variable, variable.name).type;
+    if (exp instanceof Expr.Assignment assignment)
+      return local(assignment, assignment.name).type;
+    if (exp instanceof Expr.Binary binary) {
+      switch (binary.operator.type) {
+        case PLUS:
+        case MINUS:
+        case STAR:
+        case SLASH:
+          return Type.NUMBER;
+        default:
+          return Type.BOOLEAN;
+      }
+    }
+    if (exp instanceof Expr.Unary unary)
+      return unary.operator.type == TokenType.MINUS ? Type.NUMBER : Type.BOOLEAN;
+    if (exp instanceof Expr.Logical logical)
+      return typeOf(logical.left);
+    // Calls, and whatever turns out not to compile anyway
+    return Type.NUMBER;
+  }
+
+  private Local local(Expr.Reference reference, Token name) {
+    if (reference.depth == -1) {
+      if (function != null)
+        throw new NotCompilable("uses global `" + name.lexeme + "`");
+      return outside(name.lexeme, -1, -1, name);
+    }
+
+    int index = scopes.size() - 1 - reference.depth;
+    if (index >= 0)
+      return scopes.get(index)[reference.slot];
+    if (function != null)
+      throw new NotCompilable("captures `" + name.lexeme + "`");
+    return outside(null, reference.depth - scopes.size(), reference.slot, name);
+  }
+
+  /**
+   * A variable from outside the loop, typed by the value it holds right now.
+   */
+  private Local outside(String global, int depth, int slot, Token name) {
+    String key = global != null ? global : depth + ":" + slot;
+    Local local = outside.get(key);
+    if (local != null)
+      return local;
+
+    Object value = global != null ? globals.peek(global) : frame.getAt(depth, slot);
+    Type type;
+    if (value instanceof Double) {
+      type = Type.NUMBER;
+    } else if (value instanceof Boolean) {
+      type = Type.BOOLEAN;
+    } else {
+      throw new NotCompilable("uses `" + name.lexeme + "`, which isn't a number or boolean");
+    }
+
+    local = new Local(code.newLocal(type.size), type);
+    local.global = global;
+    local.depth = depth;
+    local.slot = slot;
+    outside.put(key, local);
+    return local;
+  }
+
+  private void compile(List<Stmt> statements) {
+    for (Stmt statement : statements) {
+      // Nothing after a return runs
+      if (!reachable)
+        break;
+      compile(statement);
+    }
+  }
+
+  private void compile(Stmt statement) {
+    statement.accept(this);
+  }
+
+  private Type compile(Expr exp) {
+    return exp.accept(this);
+  }
+}
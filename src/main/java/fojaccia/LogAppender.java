@@ -0,0 +1,133 @@
+package fojaccia;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import fojaccia.Fojaccia.LogLevel;
+
+/**
+ * Writes log lines on a background thread so the caller only pays for an
+ * enqueue. Timestamps are taken when the line is logged but formatted by the
+ * writer, which also batches everything queued up into a single write.
+ *
+ * Callers only block if the buffer fills up; lines are never dropped. Since
+ * logs share stdout with the program, {@link #flush()} has to be called
+ * before anything that needs them to show up in order.
+ */
+final class LogAppender implements Runnable {
+  private static final int CAPACITY = 8192;
+
+  private record Entry(long time, LogLevel level, int line, String message) {
+  }
+
+  // Started on first use so runs that never log don't spawn a thread
+  private static final class Holder {
+    static final LogAppender INSTANCE = start();
+  }
+
+  private static volatile boolean started = false;
+
+  private final BlockingQueue<Entry> queue = new ArrayBlockingQueue<>(CAPACITY);
+  private final AtomicLong enqueued = new AtomicLong();
+  private long written = 0;
+
+  private LogAppender() {
+  }
+
+  private static LogAppender start() {
+    LogAppender appender = new LogAppender();
+    Thread writer = new Thread(appender, "foj-log");
+    writer.setDaemon(true);
+    writer.start();
+    started = true;
+    return appender;
+  }
+
+  static void append(LogLevel level, int line, String message) {
+    Holder.INSTANCE.enqueue(new Entry(System.currentTimeMillis(), level, line, message));
+  }
+
+  /**
+   * Blocks until everything logged so far has been written.
+   */
+  static void flush() {
+    if (started) {
+      Holder.INSTANCE.awaitWritten();
+    }
+  }
+
+  private void enqueue(Entry entry) {
+    // An interrupt meant for the caller mustn't lose the line, or leave it
+    // counted for flush() to wait on forever
+    boolean interrupted = false;
+    for (;;) {
+      try {
+        queue.put(entry);
+        break;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    enqueued.incrementAndGet();
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private synchronized void awaitWritten() {
+    long target = enqueued.get();
+    boolean interrupted = false;
+    while (written < target) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Override
+  public void run() {
+    List<Entry> batch = new ArrayList<>();
+    StringBuilder out = new StringBuilder();
+    for (;;) {
+      try {
+        batch.add(queue.take());
+      } catch (InterruptedException e) {
+        return;
+      }
+      queue.drainTo(batch);
+
+      for (Entry entry : batch) {
+        format(out, entry);
+      }
+      System.out.print(out);
+      System.out.flush();
+
+      synchronized (this) {
+        written += batch.size();
+        notifyAll();
+      }
+      batch.clear();
+      out.setLength(0);
+    }
+  }
+
+  private static void format(StringBuilder out, Entry entry) {
+    out.append(new Date(entry.time()));
+    out.append("  ").append(entry.level().name());
+    out.append('\t');
+    if (entry.line() > -1) {
+      out.append("[line ").append(entry.line()).append("] ");
+    }
+    out.append(entry.message());
+    out.append(System.lineSeparator());
+  }
+}
@@ -0,0 +1,77 @@
+package fojaccia;
+
+/**
+ * Executable behaviour behind an Expr.Logical. Sites whose left operand has
+ * only ever been a boolean skip the general truthiness check.
+ */
+abstract class LogicalNode {
+
+  static final LogicalNode UNINITIALIZED = new LogicalNode() {
+    @Override
+    Object apply(Interpreter interpreter, Expr.Logical exp, Object left) {
+      LogicalNode node;
+      if (!(left instanceof Boolean)) {
+        node = GENERIC;
+      } else if (exp.operator.type == TokenType.OR) {
+        node = BOOLEAN_OR;
+      } else {
+        node = BOOLEAN_AND;
+      }
+      exp.node = node;
+      return node.apply(interpreter, exp, left);
+    }
+  };
+
+  static final LogicalNode GENERIC = new LogicalNode() {
+    @Override
+    Object apply(Interpreter interpreter, Expr.Logical exp, Object left) {
+      return generic(interpreter, exp, left);
+    }
+  };
+
+  static final LogicalNode BOOLEAN_AND = new LogicalNode() {
+    @Override
+    Object apply(Interpreter interpreter, Expr.Logical exp, Object left) {
+      if (left instanceof Boolean value) {
+        return value ? interpreter.evaluate(exp.right) : left;
+      }
+      exp.node = GENERIC;
+      return generic(interpreter, exp, left);
+    }
+  };
+
+  static final LogicalNode BOOLEAN_OR = new LogicalNode() {
+    @Override
+    Object apply(Interpreter interpreter, Expr.Logical exp, Object left) {
+      if (left instanceof Boolean value) {
+        return value ? left : interpreter.evaluate(exp.right);
+      }
+      exp.node = GENERIC;
+      return generic(interpreter, exp, left);
+    }
+  };
+
+  Object execute(Interpreter interpreter, Expr.Logical exp) {
+    return apply(interpreter, exp, interpreter.evaluate(exp.left));
+  }
+
+  /**
+   * Finishes the expression once the left operand is known; the right
+   * operand is only evaluated when it doesn't short-circuit.
+   */
+  abstract Object apply(Interpreter interpreter, Expr.Logical exp, Object left);
+
+  private static Object generic(Interpreter interpreter, Expr.Logical exp, Object left) {
+    if (exp.operator.type == TokenType.OR) {
+      if (Interpreter.isTruthy(left)) {
+        return left;
+      }
+    } else {
+      if (!Interpreter.isTruthy(left)) {
+        return left;
+      }
+    }
+
+    return interpreter.evaluate(exp.right);
+  }
+}
@@ -0,0 +1,36 @@
+package fojaccia;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Results of a `memo fn`, keyed by the values it was called with. The cache
+ * is bounded; once full, the least recently used entry makes room.
+ *
+ * Memoizing is the script's promise that the function's result depends only
+ * on its arguments. Nothing checks it.
+ */
+final class MemoCache {
+  static final Object MISSING = new Object();
+  private static final int CAPACITY = 1 << 14;
+
+  private final Map<List<Object>, Object> entries =
+      new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<Object>, Object> eldest) {
+          return size() > CAPACITY;
+        }
+      };
+
+  /**
+   * Returns the cached result, or MISSING (results can be null).
+   */
+  synchronized Object lookup(List<Object> arguments) {
+    return entries.getOrDefault(arguments, MISSING);
+  }
+
+  synchronized void store(List<Object> arguments, Object result) {
+    entries.put(arguments, result);
+  }
+}
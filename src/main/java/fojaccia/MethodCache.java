@@ -0,0 +1,33 @@
+package fojaccia;
+
+/**
+ * One entry of a call site's inline cache: instances of a class laid out
+ * like {@code layout} and shaped like {@code shape} find the called method
+ * at {@code index} in their class's table. The shape is part of the key
+ * because a field with the same name would shadow the method.
+ *
+ * Nothing in it belongs to a particular run, so the classes each run of a
+ * Program makes from the same declarations share entries, and none of them
+ * are kept alive by it.
+ *
+ * Entries are immutable and chained, newest first, so a site updates its
+ * cache with a single write. A site stops adding entries after LIMIT classes
+ * and just looks the method up from then on.
+ */
+final class MethodCache {
+  static final int LIMIT = 4;
+
+  final ClassLayout layout;
+  final Shape shape;
+  final int index;
+  final MethodCache next;
+  final int size;
+
+  MethodCache(ClassLayout layout, Shape shape, int index, MethodCache next) {
+    this.layout = layout;
+    this.shape = shape;
+    this.index = index;
+    this.next = next;
+    this.size = next == null ? 1 : next.size + 1;
+  }
+}
@@ -0,0 +1,230 @@
+package fojaccia;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Compiles a program and every module it imports before any of it runs.
+ *
+ * Each file is compiled on a pool of threads, and as soon as one has been
+ * parsed the modules it imports are started on too, so independent modules
+ * compile side by side and a program takes as long as its longest chain of
+ * imports. Compiled modules are kept for the life of the process, keyed by
+ * file, and compiled again only once the file changes.
+ *
+ * Loading a program hands back the statements of every module it imports,
+ * as they were at the time, and that's what running it runs: the Interpreter
+ * and the VM each run a module the first time it's imported and never
+ * again. A program keeps the modules it was loaded with even once their
+ * files change.
+ */
+final class ModuleLoader {
+  private static final ExecutorService pool = Executors.newFixedThreadPool(
+      Runtime.getRuntime().availableProcessors(), task -> {
+        Thread thread = new Thread(task, "foj-compile");
+        thread.setDaemon(true);
+        return thread;
+      });
+
+  private static final ConcurrentHashMap<Path, Module> modules = new ConcurrentHashMap<>();
+
+  /**
+   * What compiling a file came to: its statements, as resolved and as
+   * optimized, or null if it had errors, which are kept to be handed to
+   * whoever loads it.
+   */
+  private record Compiled(List<Stmt> statements, List<Stmt> optimized, List<String> errors) {
+    List<Stmt> statements(boolean optimize) {
+      return optimize ? optimized : statements;
+    }
+  }
+
+  /**
+   * A file as it was when it was compiled. The future fails if it couldn't
+   * be read.
+   */
+  private static final class Module {
+    final FileTime modified;
+    final long size;
+    final CompletableFuture<Compiled> compiled;
+
+    Module(Path path, BasicFileAttributes attributes) {
+      this.modified = attributes == null ? null : attributes.lastModifiedTime();
+      this.size = attributes == null ? -1 : attributes.size();
+      this.compiled = CompletableFuture.supplyAsync(() -> compile(path), pool);
+    }
+
+    /**
+     * Whether it's still worth having: the file hasn't changed, and it
+     * compiled, or is still compiling.
+     */
+    boolean current(BasicFileAttributes attributes) {
+      if (attributes == null || !attributes.lastModifiedTime().equals(modified)
+          || attributes.size() != size) {
+        return false;
+      }
+      return !compiled.isDone()
+          || !compiled.isCompletedExceptionally() && compiled.resultNow().statements() != null;
+    }
+  }
+
+  private ModuleLoader() {
+  }
+
+  /**
+   * Compiles the file along with everything it imports, returning its
+   * statements, or null if any of them have errors, which are added to the
+   * list. The statements of what it imports go in the map, by file. Unless
+   * {@code optimize} is false, the statements are the Optimizer's.
+   */
+  static List<Stmt> load(Path path, boolean optimize, Map<String, List<Stmt>> loaded,
+      List<String> errors) throws IOException {
+    Compiled compiled;
+    try {
+      compiled = module(path).compiled.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof UncheckedIOException failure)
+        throw failure.getCause();
+      throw e;
+    }
+    errors.addAll(compiled.errors());
+    if (compiled.statements() == null
+        || !loadImports(compiled.statements(), optimize, loaded, errors))
+      return null;
+    return compiled.statements(optimize);
+  }
+
+  /**
+   * Resolves what the statements import against the directory and compiles
+   * it, returning whether everything compiled without errors. Any errors are
+   * added to the list, and the statements of what they import go in the map,
+   * by file, optimized unless {@code optimize} is false.
+   */
+  static boolean load(List<Stmt> statements, Path directory, boolean optimize,
+      Map<String, List<Stmt>> loaded, List<String> errors) {
+    resolve(statements, directory);
+    return loadImports(statements, optimize, loaded, errors);
+  }
+
+  private static void resolve(List<Stmt> statements, Path directory) {
+    for (Stmt.Import stmt : imports(statements)) {
+      stmt.module = directory.resolve(stmt.path).toAbsolutePath().normalize().toString();
+      module(Paths.get(stmt.module));
+    }
+  }
+
+  /**
+   * Waits for everything the statements import, directly or not, to
+   * compile, and puts what compiled in the map. Each import has already been
+   * started on, by whatever resolved it, so even one that failed isn't
+   * compiled twice; one whose file has changed since is compiled again.
+   */
+  private static boolean loadImports(List<Stmt> statements, boolean optimize,
+      Map<String, List<Stmt>> loaded, List<String> errors) {
+    Deque<Stmt.Import> pending = new ArrayDeque<>(imports(statements));
+    Set<String> seen = new HashSet<>();
+    boolean succeeded = true;
+    while (!pending.isEmpty()) {
+      Stmt.Import stmt = pending.poll();
+      if (!seen.add(stmt.module))
+        continue;
+      try {
+        Compiled module = module(Paths.get(stmt.module)).compiled.join();
+        errors.addAll(module.errors());
+        if (module.statements() == null) {
+          succeeded = false;
+        } else {
+          loaded.put(stmt.module, module.statements(optimize));
+          pending.addAll(imports(module.statements()));
+        }
+      } catch (CompletionException e) {
+        Throwable failure = e.getCause() instanceof UncheckedIOException unchecked
+            ? unchecked.getCause()
+            : e.getCause();
+        errors.add(Fojaccia.format(stmt.keyword, "Can't read `" + stmt.path + "`: " + failure));
+        succeeded = false;
+      }
+    }
+    return succeeded;
+  }
+
+  private static Module module(Path path) {
+    BasicFileAttributes attributes = attributes(path);
+    return modules.compute(path, (file, module) -> module != null && module.current(attributes)
+        ? module
+        : new Module(file, attributes));
+  }
+
+  private static BasicFileAttributes attributes(Path path) {
+    try {
+      return Files.readAttributes(path, BasicFileAttributes.class);
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Runs on the pool: compiles the file, going through the AstCache, and
+   * starts on what it imports.
+   */
+  private static Compiled compile(Path path) {
+    ByteBuffer source;
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      // Scanned straight out of the page cache, without reading it into the
+      // heap or decoding it up front; the mapping outlives the channel
+      source = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    String key = null;
+    List<Stmt> statements = null;
+    List<String> errors = new ArrayList<>();
+    if (AstCache.enabled) {
+      key = AstCache.key(source);
+      statements = AstCache.load(key);
+    }
+    if (statements == null) {
+      statements = Fojaccia.compile(new Scanner(source), errors);
+      if (statements == null)
+        return new Compiled(null, null, errors);
+      if (key != null) {
+        AstCache.store(key, statements);
+      }
+    }
+
+    resolve(statements, path.getParent());
+    return new Compiled(statements, new Optimizer().optimize(statements), errors);
+  }
+
+  // Imports are only allowed at the top
+  private static List<Stmt.Import> imports(List<Stmt> statements) {
+    List<Stmt.Import> imports = new ArrayList<>();
+    for (Stmt statement : statements) {
+      if (statement instanceof Stmt.Import stmt) {
+        imports.add(stmt);
+      }
+    }
+    return imports;
+  }
+}
@@ -0,0 +1,12 @@
+package fojaccia;
+
+/**
+ * Thrown by a native function called with arguments it can't use. It has
+ * no token to point at, so the Interpreter turns it into a RuntimeError at
+ * the call.
+ */
+class NativeError extends RuntimeException {
+  NativeError(String message) {
+    super(message);
+  }
+}
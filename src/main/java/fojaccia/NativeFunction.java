@@ -0,0 +1,18 @@
+package fojaccia;
+
+import java.util.function.Function;
+
+final class NativeFunction {
+  final int arity;
+  final Function<Object[], Object> body;
+
+  NativeFunction(int arity, Function<Object[], Object> body) {
+    this.arity = arity;
+    this.body = body;
+  }
+
+  @Override
+  public String toString() {
+    return "<native function>";
+  }
+}
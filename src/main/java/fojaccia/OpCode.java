@@ -0,0 +1,68 @@
+package fojaccia;
+
+/**
+ * Instruction set for the VM. Operands follow the opcode inline: `u8` is a
+ * single unsigned byte, `u16` is two bytes, big-endian.
+ */
+final class OpCode {
+
+  private OpCode() {
+    // Constants only
+  }
+
+  static final byte CONSTANT = 0; // u16 constant index
+  static final byte NULL = 1;
+  static final byte TRUE = 2;
+  static final byte FALSE = 3;
+  static final byte POP = 4;
+
+  static final byte GET_LOCAL = 5; // u8 depth, u16 slot
+  static final byte SET_LOCAL = 6; // u8 depth, u16 slot
+  static final byte DEFINE_LOCAL = 7; // u16 slot
+  static final byte GET_GLOBAL = 8; // u16 name constant
+  static final byte SET_GLOBAL = 9; // u16 name constant
+  static final byte DEFINE_GLOBAL = 10; // u16 name constant
+  static final byte PUSH_SCOPE = 11; // u16 size
+  static final byte POP_SCOPE = 12;
+
+  static final byte GET_PROPERTY = 13; // u16 name constant
+  static final byte SET_PROPERTY = 14; // u16 name constant
+  static final byte GET_SUPER = 15; // u8 depth, u16 name constant, u16 `this` slot
+
+  static final byte EQUAL = 16;
+  static final byte NOT_EQUAL = 17;
+  static final byte GREATER = 18;
+  static final byte GREATER_EQUAL = 19;
+  static final byte LESS = 20;
+  static final byte LESS_EQUAL = 21;
+  static final byte ADD = 22;
+  static final byte SUBTRACT = 23;
+  static final byte MULTIPLY = 24;
+  static final byte DIVIDE = 25;
+  static final byte NOT = 26;
+  static final byte NEGATE = 27;
+
+  static final byte PRINT = 28;
+  static final byte JUMP = 29; // u16 forward offset
+  static final byte JUMP_IF_FALSE = 30; // u16 forward offset, leaves the condition
+  static final byte LOOP = 31; // u16 backward offset
+
+  static final byte CALL = 32; // u8 argument count
+  static final byte INVOKE = 33; // u16 name constant, u8 argument count
+  static final byte RETURN = 34;
+  static final byte CLOSURE = 35; // u16 function constant
+
+  static final byte CHECK_SUPERCLASS = 36;
+  static final byte CLASS = 37; // u16 name constant, u8 1 if the superclass is in the current scope
+  static final byte METHOD = 38; // u16 name constant
+
+  // Replace the current frame with the call instead of returning its result
+  static final byte TAIL_CALL = 39; // u8 argument count
+  static final byte TAIL_INVOKE = 40; // u16 name constant, u8 argument count
+
+  // Runs the module, unless it already has, and pushes null
+  static final byte IMPORT = 41; // u16 module path constant
+
+  // DEFINE_GLOBAL for a `const`, which later SET_GLOBALs refuse
+  static final byte DEFINE_CONSTANT = 42; // u16 name constant
+}
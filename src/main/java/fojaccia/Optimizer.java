@@ -0,0 +1,299 @@
+package fojaccia;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Simplifies a resolved tree before it runs: folds operations on literals,
+ * drops groupings, prunes branches and loops whose condition is a literal,
+ * and inlines constants whose initializer folds down to a literal.
+ *
+ * Folding goes through the same generic operations the Interpreter uses, so
+ * results match exactly. Anything that would raise a runtime error is left
+ * alone to raise it at runtime. Nodes that don't change are reused as is, and
+ * rebuilt ones keep whatever the Resolver filled in.
+ */
+public class Optimizer implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+  private static final Stmt EMPTY = new Stmt.Block(List.of());
+
+  // Folded initializers of the constants seen so far
+  private final Map<Stmt.Var, Expr> constants = new HashMap<>();
+
+  public List<Stmt> optimize(List<Stmt> statements) {
+    List<Stmt> optimized = new ArrayList<>(statements.size());
+    for (Stmt statement : statements) {
+      Stmt result = optimize(statement);
+      if (result != null) {
+        optimized.add(result);
+      }
+    }
+    return optimized;
+  }
+
+  @Override
+  public Stmt visitImportStmt(Stmt.Import stmt) {
+    return stmt;
+  }
+
+  @Override
+  public Stmt visitSpawnStmt(Stmt.Spawn stmt) {
+    Expr call = optimize(stmt.call);
+    return call == stmt.call ? stmt : new Stmt.Spawn(stmt.keyword, (Expr.Call) call);
+  }
+
+  @Override
+  public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+    Expr expression = optimize(stmt.expression);
+    return expression == stmt.expression ? stmt : new Stmt.Expression(expression);
+  }
+
+  @Override
+  public Stmt visitPrintStmt(Stmt.Print stmt) {
+    Expr expression = optimize(stmt.expression);
+    return expression == stmt.expression ? stmt : new Stmt.Print(expression);
+  }
+
+  @Override
+  public Stmt visitReturnStmt(Stmt.Return stmt) {
+    if (stmt.value == null)
+      return stmt;
+    Expr value = optimize(stmt.value);
+    if (value == stmt.value)
+      return stmt;
+
+    Stmt.Return result = new Stmt.Return(stmt.keyword, value);
+    // Only groupings around it can have gone, so the call is still in tail
+    // position; it may have been rebuilt though
+    if (stmt.tailCall != null) {
+      result.tailCall = (Expr.Call) value;
+    }
+    return result;
+  }
+
+  @Override
+  public Stmt visitIfStmt(Stmt.If stmt) {
+    Expr condition = optimize(stmt.condition);
+    if (condition instanceof Expr.Literal literal) {
+      if (Interpreter.isTruthy(literal.value)) {
+        return optimize(stmt.thenBranch);
+      }
+      return stmt.elseBranch == null ? null : optimize(stmt.elseBranch);
+    }
+
+    Stmt thenBranch = body(stmt.thenBranch);
+    Stmt elseBranch = stmt.elseBranch == null ? null : body(stmt.elseBranch);
+    if (condition == stmt.condition && thenBranch == stmt.thenBranch && elseBranch == stmt.elseBranch)
+      return stmt;
+    return new Stmt.If(condition, thenBranch, elseBranch);
+  }
+
+  @Override
+  public Stmt visitWhileStmt(Stmt.While stmt) {
+    Expr condition = optimize(stmt.condition);
+    if (condition instanceof Expr.Literal literal && !Interpreter.isTruthy(literal.value)) {
+      return null;
+    }
+
+    Stmt body = body(stmt.body);
+    if (condition == stmt.condition && body == stmt.body)
+      return stmt;
+    return new Stmt.While(stmt.keyword, condition, body);
+  }
+
+  @Override
+  public Stmt visitVarStmt(Stmt.Var stmt) {
+    if (stmt.initializer == null)
+      return stmt;
+
+    Expr initializer = stmt.constant ? constant(stmt) : optimize(stmt.initializer);
+    if (initializer == stmt.initializer)
+      return stmt;
+    Stmt.Var var = new Stmt.Var(stmt.name, initializer, stmt.constant);
+    var.slot = stmt.slot;
+    return var;
+  }
+
+  @Override
+  public Stmt visitBlockStmt(Stmt.Block stmt) {
+    List<Stmt> statements = optimize(stmt.statements);
+    if (statements.equals(stmt.statements))
+      return stmt;
+    Stmt.Block block = new Stmt.Block(statements);
+    block.scopeSize = stmt.scopeSize;
+    return block;
+  }
+
+  @Override
+  public Stmt visitClassStmt(Stmt.Class stmt) {
+    List<Stmt.Function> methods = new ArrayList<>(stmt.methods.size());
+    for (Stmt.Function method : stmt.methods) {
+      methods.add((Stmt.Function) optimize(method));
+    }
+    if (methods.equals(stmt.methods))
+      return stmt;
+
+    Stmt.Class fojClass = new Stmt.Class(stmt.name, stmt.superclass, methods);
+    fojClass.slot = stmt.slot;
+    fojClass.superMethods = stmt.superMethods;
+    return fojClass;
+  }
+
+  @Override
+  public Stmt visitFunctionStmt(Stmt.Function stmt) {
+    List<Stmt> body = optimize(stmt.body);
+    if (body.equals(stmt.body))
+      return stmt;
+
+    Stmt.Function function = new Stmt.Function(stmt.name, stmt.params, body);
+    function.slot = stmt.slot;
+    function.scopeSize = stmt.scopeSize;
+    function.memoized = stmt.memoized;
+    return function;
+  }
+
+  @Override
+  public Expr visitBinary(Expr.Binary exp) {
+    Expr left = optimize(exp.left);
+    Expr right = optimize(exp.right);
+    Expr.Binary binary = left == exp.left && right == exp.right
+        ? exp
+        : new Expr.Binary(left, exp.operator, right);
+
+    if (left instanceof Expr.Literal l && right instanceof Expr.Literal r) {
+      try {
+        return new Expr.Literal(BinaryNode.GENERIC.apply(binary, l.value, r.value));
+      } catch (RuntimeError error) {
+        // Left for the program to run into
+      }
+    }
+    return binary;
+  }
+
+  @Override
+  public Expr visitUnary(Expr.Unary exp) {
+    Expr right = optimize(exp.right);
+    Expr.Unary unary = right == exp.right ? exp : new Expr.Unary(exp.operator, right);
+
+    if (right instanceof Expr.Literal r) {
+      try {
+        return new Expr.Literal(UnaryNode.GENERIC.apply(unary, r.value));
+      } catch (RuntimeError error) {
+        // Left for the program to run into
+      }
+    }
+    return unary;
+  }
+
+  @Override
+  public Expr visitLogical(Expr.Logical exp) {
+    Expr left = optimize(exp.left);
+    Expr right = optimize(exp.right);
+
+    if (left instanceof Expr.Literal l) {
+      boolean truthy = Interpreter.isTruthy(l.value);
+      boolean shortCircuits = exp.operator.type == TokenType.OR ? truthy : !truthy;
+      return shortCircuits ? left : right;
+    }
+
+    if (left == exp.left && right == exp.right)
+      return exp;
+    return new Expr.Logical(left, exp.operator, right);
+  }
+
+  @Override
+  public Expr visitGrouping(Expr.Grouping exp) {
+    return optimize(exp.expression);
+  }
+
+  @Override
+  public Expr visitLiteral(Expr.Literal exp) {
+    return exp;
+  }
+
+  @Override
+  public Expr visitVariable(Expr.Variable exp) {
+    if (exp.constant != null && constant(exp.constant) instanceof Expr.Literal literal) {
+      return literal;
+    }
+    return exp;
+  }
+
+  @Override
+  public Expr visitAssignment(Expr.Assignment exp) {
+    Expr value = optimize(exp.value);
+    if (value == exp.value)
+      return exp;
+
+    Expr.Assignment assignment = new Expr.Assignment(exp.name, value);
+    assignment.depth = exp.depth;
+    assignment.slot = exp.slot;
+    return assignment;
+  }
+
+  @Override
+  public Expr visitCall(Expr.Call exp) {
+    Expr callee = optimize(exp.callee);
+    List<Expr> arguments = new ArrayList<>(exp.arguments.size());
+    for (Expr argument : exp.arguments) {
+      arguments.add(optimize(argument));
+    }
+
+    if (callee == exp.callee && arguments.equals(exp.arguments))
+      return exp;
+    return new Expr.Call(callee, exp.paren, arguments);
+  }
+
+  @Override
+  public Expr visitGet(Expr.Get exp) {
+    Expr object = optimize(exp.object);
+    return object == exp.object ? exp : new Expr.Get(object, exp.name);
+  }
+
+  @Override
+  public Expr visitSet(Expr.Set exp) {
+    Expr object = optimize(exp.object);
+    Expr value = optimize(exp.value);
+    if (object == exp.object && value == exp.value)
+      return exp;
+    return new Expr.Set(object, exp.name, value);
+  }
+
+  @Override
+  public Expr visitThis(Expr.This exp) {
+    return exp;
+  }
+
+  @Override
+  public Expr visitSuper(Expr.Super exp) {
+    return exp;
+  }
+
+  /**
+   * A constant's initializer, folded the first time it's asked for. Uses can
+   * be reached before the declaration, from a function declared earlier.
+   */
+  private Expr constant(Stmt.Var declaration) {
+    Expr folded = constants.get(declaration);
+    if (folded == null) {
+      folded = optimize(declaration.initializer);
+      constants.put(declaration, folded);
+    }
+    return folded;
+  }
+
+  // Branches and loop bodies still need a statement even when pruned away
+  private Stmt body(Stmt statement) {
+    Stmt result = optimize(statement);
+    return result == null ? EMPTY : result;
+  }
+
+  private Stmt optimize(Stmt statement) {
+    return statement.accept(this);
+  }
+
+  private Expr optimize(Expr exp) {
+    return exp.accept(this);
+  }
+}
@@ -12,11 +12,14 @@ public class Parser {
   private static class ParseError extends RuntimeException {
   }
 
-  private final List<Token> tokens;
+  private final TokenBuffer tokens;
   private int current = 0;
+  // The type of the token at current, looked at far more than anything else
+  private TokenType next;
 
-  Parser(List<Token> tokens) {
+  Parser(TokenBuffer tokens) {
     this.tokens = tokens;
+    this.next = tokens.type(0);
   }
 
   public List<Stmt> parse() {
@@ -35,8 +38,18 @@ public class Parser {
         return classDeclaration();
       if (match(FN))
         return function("function");
+      if (match(MEMO)) {
+        consume(FN, "`fn` expected after `memo`");
+        Stmt.Function function = function("function");
+        function.memoized = true;
+        return function;
+      }
       if (match(VAR))
         return varDeclaration();
+      if (match(CONST))
+        return constDeclaration();
+      if (match(IMPORT))
+        return importDeclaration();
       return statement();
     } catch (ParseError error) {
       synchronize();
@@ -45,7 +58,8 @@ public class Parser {
   }
 
   private Stmt classDeclaration() {
-    Token name = consume(IDENTIFIER, "Class name expected");
+    consume(IDENTIFIER, "Class name expected");
+    Token name = previous();
 
     Expr.Variable superclass = null;
     if (match(LESS)) {
@@ -66,7 +80,8 @@ public class Parser {
   }
 
   private Stmt varDeclaration() {
-    Token name = consume(IDENTIFIER, "identifier expected");
+    consume(IDENTIFIER, "identifier expected");
+    Token name = previous();
 
     Expr initializer = null;
     if (match(EQUAL)) {
@@ -77,11 +92,32 @@ public class Parser {
     return new Stmt.Var(name, initializer);
   }
 
+  private Stmt constDeclaration() {
+    consume(IDENTIFIER, "identifier expected");
+    Token name = previous();
+    consume(EQUAL, "`=` expected after constant name");
+    Expr initializer = expression();
+
+    consume(SEMICOLON, "`;` expected after declaration");
+    return new Stmt.Var(name, initializer, true);
+  }
+
+  private Stmt importDeclaration() {
+    Token keyword = previous();
+    consume(STRING, "Module path expected after `import`");
+    String path = (String) tokens.literal(current - 1);
+
+    consume(SEMICOLON, "`;` expected after import");
+    return new Stmt.Import(keyword, path);
+  }
+
   private Stmt statement() {
     if (match(IF))
       return ifStatement();
     if (match(PRINT))
       return printStatement();
+    if (match(SPAWN))
+      return spawnStatement();
     if (match(RETURN))
       return returnStatement();
     if (match(WHILE))
@@ -103,6 +139,7 @@ public class Parser {
    * Body: `{...}`
    */
   private Stmt forStatement() {
+    Token keyword = previous();
     consume(LEFT_PAREN, "`(` expected after `for`");
 
     Stmt initializer;
@@ -139,7 +176,7 @@ public class Parser {
 
     if (condition == null)
       condition = new Expr.Literal(true);
-    body = new Stmt.While(condition, body);
+    body = new Stmt.While(keyword, condition, body);
 
     if (initializer != null) {
       body = new Stmt.Block(
@@ -152,13 +189,14 @@ public class Parser {
   }
 
   private Stmt whileStatement() {
+    Token keyword = previous();
     consume(LEFT_PAREN, "`(` expected after `while`)");
     Expr condition = expression();
     consume(RIGHT_PAREN, "`)` expected after expression");
 
     Stmt body = statement();
 
-    return new Stmt.While(condition, body);
+    return new Stmt.While(keyword, condition, body);
   }
 
   private Stmt ifStatement() {
@@ -192,19 +230,23 @@ public class Parser {
     return new Stmt.Print(value);
   }
 
+  private Stmt spawnStatement() {
+    Token keyword = previous();
+    Expr call = expression();
+    if (!(call instanceof Expr.Call)) {
+      throw error(keyword, "Function call expected after `spawn`");
+    }
+    consume(SEMICOLON, "`;` expected after spawn");
+    return new Stmt.Spawn(keyword, (Expr.Call) call);
+  }
+
   private Stmt returnStatement() {
     Token keyword = previous();
     Expr value = null;
     if (!check(SEMICOLON)) {
       value = expression();
-      Fojaccia.Log(LogLevel.DEBUG, "Return value class: " + value.getClass().getName());
-      if (value instanceof Expr.Binary) {
-        Fojaccia.Log(LogLevel.DEBUG, "It's a binary expression");
-      }
-
-      if (value instanceof Expr.Variable) {
-        Fojaccia.Log(LogLevel.DEBUG, "It's a variable expression");
-      }
+      Expr returned = value;
+      Fojaccia.Log(LogLevel.DEBUG, () -> "Return value class: " + returned.getClass().getName());
     }
 
     consume(SEMICOLON, "`;` expected after return value");
@@ -218,17 +260,19 @@ public class Parser {
   }
 
   private Stmt.Function function(String type) {
-    Token name = consume(IDENTIFIER, "Expected " + type + " name");
+    consume(IDENTIFIER, "Expected " + type + " name");
+    Token name = previous();
     List<Token> parameters = new ArrayList<>();
     consume(LEFT_PAREN, "Expected `(` after " + type + " name");
 
     if (!check(RIGHT_PAREN)) {
       do {
         if (parameters.size() >= 255) {
-          error(peek(), "Can't have more than 255 parameters");
+          error(current, "Can't have more than 255 parameters");
         }
 
-        parameters.add(consume(IDENTIFIER, "Expected parameter name"));
+        consume(IDENTIFIER, "Expected parameter name");
+        parameters.add(previous());
       } while (match(COMMA));
     }
 
@@ -346,12 +390,12 @@ public class Parser {
   private Expr call() {
     Expr expr = primary();
 
-    Fojaccia.Log(LogLevel.DEBUG, "call() executing");
     while (true) {
       if (match(LEFT_PAREN)) {
         expr = finishCall(expr);
       } else if (match(DOT)) {
-        Token name = consume(IDENTIFIER, "Property name expected after `.`");
+        consume(IDENTIFIER, "Property name expected after `.`");
+        Token name = previous();
         expr = new Expr.Get(expr, name);
       } else {
         break;
@@ -366,15 +410,15 @@ public class Parser {
     if (!check(RIGHT_PAREN)) {
       do {
         if (arguments.size() >= 255) {
-          error(peek(), "Can't have more than 255 arguments");
+          error(current, "Can't have more than 255 arguments");
         }
 
         arguments.add(expression());
-        Fojaccia.Log("call finishing");
       } while (match(COMMA));
     }
 
-    Token paren = consume(RIGHT_PAREN, "`)` expected after argument list");
+    consume(RIGHT_PAREN, "`)` expected after argument list");
+    Token paren = previous();
     return new Expr.Call(callee, paren, arguments);
   }
 
@@ -400,13 +444,14 @@ public class Parser {
     }
 
     if (match(NUMBER, STRING)) {
-      return new Expr.Literal(previous().literal);
+      return new Expr.Literal(tokens.literal(current - 1));
     }
 
     if (match(SUPER)) {
       Token keyword = previous();
       consume(DOT, "`.` expected after `super`");
-      Token method = consume(IDENTIFIER, "Superclass method name expected");
+      consume(IDENTIFIER, "Superclass method name expected");
+      Token method = previous();
       return new Expr.Super(keyword, method);
     }
 
@@ -416,7 +461,11 @@ public class Parser {
       return new Expr.Grouping(exp);
     }
 
-    throw error(peek(), "Expression expected");
+    throw error(current, "Expression expected");
+  }
+
+  private ParseError error(int index, String message) {
+    return error(tokens.token(index), message);
   }
 
   private ParseError error(Token token, String message) {
@@ -428,17 +477,21 @@ public class Parser {
     advance();
 
     while (!atEOF()) {
-      if (previous().type.equals(SEMICOLON))
+      if (tokens.type(current - 1) == SEMICOLON)
         return;
 
-      switch (peek().type) {
+      switch (peek()) {
         case CLASS:
         case FN:
         case VAR:
+        case CONST:
+        case MEMO:
+        case IMPORT:
         case FOR:
         case IF:
         case WHILE:
         case PRINT:
+        case SPAWN:
         case RETURN:
           return;
       }
@@ -447,11 +500,25 @@ public class Parser {
     }
   }
 
-  private Token consume(TokenType type, String message) {
-    if (check(type))
-      return advance();
+  private void consume(TokenType type, String message) {
+    if (check(type)) {
+      advance();
+      return;
+    }
+
+    throw error(current, message);
+  }
+
+  private boolean match(TokenType type) {
+    if (check(type)) {
+      advance();
+      return true;
+    }
+    return false;
+  }
 
-    throw error(peek(), message);
+  private boolean match(TokenType first, TokenType second) {
+    return match(first) || match(second);
   }
 
   private boolean match(TokenType... tokenTypes) {
@@ -465,26 +532,30 @@ public class Parser {
   }
 
   private boolean check(TokenType type) {
-    return !atEOF() && peek().type.equals(type);
+    return !atEOF() && peek() == type;
   }
 
-  private Token advance() {
-    if (!atEOF())
+  private void advance() {
+    if (!atEOF()) {
       current++;
-    return previous();
+      next = tokens.type(current);
+    }
   }
 
-  private Token peek() {
-    return tokens.get(current);
+  private TokenType peek() {
+    return next;
   }
 
+  /**
+   * The token just consumed, for the syntax tree to keep.
+   */
   private Token previous() {
     return current == 0
-        ? tokens.get(current)
-        : tokens.get(current - 1);
+        ? tokens.token(current)
+        : tokens.token(current - 1);
   }
 
   private boolean atEOF() {
-    return peek().type.equals(EOF);
+    return peek() == EOF;
   }
 }
@@ -0,0 +1,19 @@
+package fojaccia;
+
+/**
+ * What the Jit knows about a function declaration or a loop: how hot it has
+ * run, and its compiled code once it has some. A function counts its calls,
+ * a loop its iterations. A function's profile is shared by every closure
+ * created from the declaration.
+ */
+final class Profile {
+  int count = 0;
+  // Profiles live on the syntax tree, which Contexts running the same
+  // Program share, so code compiled on one thread is published to the others
+  // through here
+  volatile JitCode code;
+  // Set once it turns out not to be compilable, or compiled code for it has
+  // had to be thrown away too often
+  boolean failed = false;
+  int deopts = 0;
+}
@@ -0,0 +1,83 @@
+package fojaccia;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A script compiled, along with everything it imports, and optimized, ready
+ * to be run.
+ *
+ * Running it doesn't change what it does, but it does change the tree, which
+ * every run shares: operator nodes specialize to the types they see, call and
+ * field sites cache what they look up, and the Jit counts calls and
+ * iterations and publishes compiled code. None of that is tied to a run.
+ * Method caches are keyed by ClassLayout and field caches by Shape, neither
+ * of which belongs to a Context. So one Program can be run by any number of
+ * Contexts, on any number of threads, at once, and what one run learns the
+ * rest get the benefit of.
+ */
+public final class Program {
+  final List<Stmt> statements;
+  // The file it was compiled from, or null if it was compiled from source
+  final String module;
+  // Everything it imports, by file, as it was when it was compiled
+  final Map<String, List<Stmt>> modules;
+
+  private Program(List<Stmt> statements, String module, Map<String, List<Stmt>> modules) {
+    this.statements = List.copyOf(statements);
+    this.module = module;
+    this.modules = Map.copyOf(modules);
+  }
+
+  /**
+   * Compiles the source. What it imports is relative to the working
+   * directory. Throws CompileError if it has errors.
+   */
+  public static Program compile(String source) {
+    return compile(source, true);
+  }
+
+  /**
+   * Compiles the source, leaving out the Optimizer if {@code optimize} is
+   * false, as -O0 does on the command line.
+   */
+  public static Program compile(String source, boolean optimize) {
+    List<String> errors = new ArrayList<>();
+    Map<String, List<Stmt>> modules = new HashMap<>();
+    List<Stmt> statements = Fojaccia.compile(new Scanner(source), errors);
+    if (statements == null
+        || !ModuleLoader.load(statements, Paths.get(""), optimize, modules, errors))
+      throw new CompileError(errors);
+    if (optimize) {
+      statements = new Optimizer().optimize(statements);
+    }
+    return new Program(statements, null, modules);
+  }
+
+  /**
+   * Compiles the file, by way of the AstCache like the command line does.
+   * Throws CompileError if it has errors.
+   */
+  public static Program compile(Path path) throws IOException {
+    return compile(path, true);
+  }
+
+  /**
+   * Compiles the file, leaving out the Optimizer if {@code optimize} is
+   * false, as -O0 does on the command line.
+   */
+  public static Program compile(Path path, boolean optimize) throws IOException {
+    Path file = path.toAbsolutePath().normalize();
+    List<String> errors = new ArrayList<>();
+    Map<String, List<Stmt>> modules = new HashMap<>();
+    List<Stmt> statements = ModuleLoader.load(file, optimize, modules, errors);
+    if (statements == null)
+      throw new CompileError(errors);
+    return new Program(statements, file.toString(), modules);
+  }
+}
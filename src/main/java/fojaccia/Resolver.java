@@ -1,5 +1,6 @@
 package fojaccia;
 
+import java.util.ArrayList;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.List;
@@ -7,12 +8,22 @@ import java.util.Stack;
 
 public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
-  private final Interpreter interpreter;
-  private final Stack<Map<String, Boolean>> scopes = new Stack<>();
+  private final Stack<Map<String, Local>> scopes = new Stack<>();
   private FunctionType currentFunction = FunctionType.NONE;
 
-  Resolver(Interpreter interpreter) {
-    this.interpreter = interpreter;
+  /**
+   * A local's position in its scope's slot array, handed out in declaration
+   * order so the Interpreter can size each Environment up front.
+   */
+  private static class Local {
+    final int slot;
+    boolean defined = false;
+    // Set for locals declared with `const`
+    Stmt.Var constant;
+
+    Local(int slot) {
+      this.slot = slot;
+    }
   }
 
   private enum FunctionType {
@@ -29,21 +40,26 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
   }
 
   private ClassType currentClass = ClassType.NONE;
+  // Methods the current subclass reaches through `super`, in order of first use
+  private List<String> superMethods;
+  private final Map<String, Stmt.Var> globalConstants = new HashMap<>();
 
   @Override
   public Void visitBlockStmt(Stmt.Block stmt) {
     beginScope();
     resolve(stmt.statements);
-    endScope();
+    stmt.scopeSize = endScope();
     return null;
   }
 
   @Override
   public Void visitClassStmt(Stmt.Class stmt) {
     ClassType enclosingClass = currentClass;
+    List<String> enclosingSuperMethods = superMethods;
     currentClass = ClassType.CLASS;
+    superMethods = new ArrayList<>();
 
-    declare(stmt.name);
+    stmt.slot = declare(stmt.name);
     define(stmt.name);
 
     if (stmt.superclass != null) {
@@ -55,12 +71,9 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     if (stmt.superclass != null) {
       beginScope();
-      scopes.peek().put("super", true);
+      declareImplicit("super");
     }
 
-    beginScope();
-    scopes.peek().put("this", true);
-
     for (Stmt.Function method : stmt.methods) {
       FunctionType declaration = FunctionType.METHOD;
       if (method.name.lexeme.equals("init")) {
@@ -69,21 +82,30 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
       resolveFunction(method, declaration);
     }
 
-    endScope();
     if (stmt.superclass != null) endScope();
 
+    stmt.superMethods = superMethods;
     currentClass = enclosingClass;
+    superMethods = enclosingSuperMethods;
 
     return null;
   }
 
   @Override
   public Void visitVarStmt(Stmt.Var stmt) {
-    declare(stmt.name);
+    stmt.slot = declare(stmt.name);
     if (stmt.initializer != null) {
       resolve(stmt.initializer);
     }
     define(stmt.name);
+
+    if (stmt.constant) {
+      if (scopes.isEmpty()) {
+        globalConstants.put(stmt.name.lexeme, stmt);
+      } else {
+        scopes.peek().get(stmt.name.lexeme).constant = stmt;
+      }
+    }
     return null;
   }
 
@@ -95,18 +117,21 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
   @Override
   public Void visitVariable(Expr.Variable expr) {
-    if (!scopes.isEmpty() && scopes.peek().get(expr.name.lexeme) == Boolean.FALSE) {
+    if (!scopes.isEmpty() && scopes.peek().containsKey(expr.name.lexeme)
+        && !scopes.peek().get(expr.name.lexeme).defined) {
       Fojaccia.Error(expr.name, "Can't read local variable in its own initializer");
     }
 
-    resolveLocal(expr, expr.name);
+    expr.constant = constant(resolveLocal(expr, expr.name), expr.name);
     return null;
   }
 
   @Override
   public Void visitAssignment(Expr.Assignment expr) {
     resolve(expr.value);
-    resolveLocal(expr, expr.name);
+    if (constant(resolveLocal(expr, expr.name), expr.name) != null) {
+      Fojaccia.Error(expr.name, "Can't assign to a constant");
+    }
     return null;
   }
 
@@ -123,8 +148,17 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
       Fojaccia.Error(expr.keyword, "Can't use `super` outside of a class");
     } else if (currentClass != ClassType.SUBCLASS) {
       Fojaccia.Error(expr.keyword, "Can't use `super` without a superclass");
+    } else {
+      expr.index = superMethods.indexOf(expr.method.lexeme);
+      if (expr.index == -1) {
+        expr.index = superMethods.size();
+        superMethods.add(expr.method.lexeme);
+      }
+    }
+    if (resolveLocal(expr, expr.keyword) != null) {
+      // The method's frame sits right inside the scope holding `super`
+      expr.receiver = scopes.get(scopes.size() - expr.depth).get("this").slot;
     }
-    resolveLocal(expr, expr.keyword);
     return null;
   }
 
@@ -140,13 +174,28 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
   @Override
   public Void visitFunctionStmt(Stmt.Function stmt) {
-    declare(stmt.name);
+    stmt.slot = declare(stmt.name);
     define(stmt.name);
 
     resolveFunction(stmt, FunctionType.FUNCTION);
     return null;
   }
 
+  @Override
+  public Void visitImportStmt(Stmt.Import stmt) {
+    // Modules define globals, and are all loaded before the program runs
+    if (!scopes.isEmpty()) {
+      Fojaccia.Error(stmt.keyword, "Can't import outside of top-level code");
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitSpawnStmt(Stmt.Spawn stmt) {
+    resolve(stmt.call);
+    return null;
+  }
+
   @Override
   public Void visitExpressionStmt(Stmt.Expression stmt) {
     resolve(stmt.expression);
@@ -179,6 +228,14 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         Fojaccia.Error(stmt.keyword, "Can't return a value from an initializer");
       }
       resolve(stmt.value);
+
+      Expr value = stmt.value;
+      while (value instanceof Expr.Grouping grouping) {
+        value = grouping.expression;
+      }
+      if (value instanceof Expr.Call call) {
+        stmt.tailCall = call;
+      }
     }
 
     return null;
@@ -252,44 +309,81 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
       declare(param);
       define(param);
     }
+    // Methods find their receiver in the frame, right after the parameters
+    if (type == FunctionType.METHOD || type == FunctionType.INITIALIZER) {
+      declareImplicit("this");
+    }
     resolve(function.body);
-    endScope();
+    function.scopeSize = endScope();
     currentFunction = enclosingFunction;
   }
 
-  private void resolveLocal(Expr expr, Token name) {
+  /**
+   * Returns the local the name refers to, or null if it's a global.
+   */
+  private Local resolveLocal(Expr.Reference expr, Token name) {
     for (int i = scopes.size() - 1; i >= 0; i--) {
-      if (scopes.get(i).containsKey(name.lexeme)) {
-        interpreter.resolve(expr, scopes.size() - 1 - i);
-        return;
+      Local local = scopes.get(i).get(name.lexeme);
+      if (local != null) {
+        expr.depth = scopes.size() - 1 - i;
+        expr.slot = local.slot;
+        return local;
       }
     }
+    return null;
   }
 
-  public void declare(Token name) {
-    if (scopes.isEmpty())
-      return;
+  private Stmt.Var constant(Local local, Token name) {
+    if (local != null) {
+      return local.constant;
+    }
+    return globalConstants.get(name.lexeme);
+  }
+
+  /**
+   * Returns the slot handed out to the name, or -1 when declaring a global.
+   */
+  public int declare(Token name) {
+    if (scopes.isEmpty()) {
+      // Uses of a global constant may already have been inlined
+      if (globalConstants.containsKey(name.lexeme)) {
+        Fojaccia.Error(name, "Constant name already exists");
+      }
+      return -1;
+    }
 
-    Map<String, Boolean> scope = scopes.peek();
+    Map<String, Local> scope = scopes.peek();
     if (scope.containsKey(name.lexeme)) {
       Fojaccia.Error(name, "Variable name already exists in this scope");
+      return scope.get(name.lexeme).slot;
     }
 
-    scope.put(name.lexeme, false);
+    Local local = new Local(scope.size());
+    scope.put(name.lexeme, local);
+    return local.slot;
   }
 
   public void define(Token name) {
     if (scopes.isEmpty())
       return;
-    scopes.peek().put(name.lexeme, true);
+    scopes.peek().get(name.lexeme).defined = true;
+  }
+
+  private void declareImplicit(String name) {
+    Local local = new Local(scopes.peek().size());
+    local.defined = true;
+    scopes.peek().put(name, local);
   }
 
   private void beginScope() {
-    scopes.push(new HashMap<String, Boolean>());
+    scopes.push(new HashMap<String, Local>());
   }
 
-  private void endScope() {
-    scopes.pop();
+  /**
+   * Returns the number of slots the closed scope needs at runtime.
+   */
+  private int endScope() {
+    return scopes.pop().size();
   }
 
   private void resolve(Stmt statement) {
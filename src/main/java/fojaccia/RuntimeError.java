@@ -1,6 +1,6 @@
 package fojaccia;
 
-class RuntimeError extends RuntimeException {
+public class RuntimeError extends RuntimeException {
 
     final Token token;
 
@@ -8,4 +8,8 @@ class RuntimeError extends RuntimeException {
         super(message);
         this.token = token;
     }
+
+    public int line() {
+        return token.line;
+    }
 }
@@ -1,52 +1,54 @@
 package fojaccia;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 import static fojaccia.TokenType.*;
 
+/**
+ * Scans UTF-8 source a byte at a time. Everything but the contents of string
+ * literals and comments is ASCII, so nothing needs decoding until the Parser
+ * asks for a token's text; files are scanned straight out of a mapping.
+ */
 public class Scanner {
-    private final String source;
-    private final List<Token> tokens = new ArrayList<>();
-    private final static Map<String, TokenType> keywords;
+    private final ByteBuffer source;
+    private final int length;
+    private final TokenBuffer tokens;
     private int start = 0;
     private int current = 0;
     private int line = 1;
 
-    static {
-        keywords = new HashMap<>();
-        keywords.put("fn", FN);
-        keywords.put("if", IF);
-        keywords.put("or", OR);
-        keywords.put("and", AND);
-        keywords.put("for", FOR);
-        keywords.put("var", VAR);
-        keywords.put("else", ELSE);
-        keywords.put("null", NULL);
-        keywords.put("this", THIS);
-        keywords.put("true", TRUE);
-        keywords.put("class", CLASS);
-        keywords.put("false", FALSE);
-        keywords.put("print", PRINT);
-        keywords.put("super", SUPER);
-        keywords.put("while", WHILE);
-        keywords.put("return", RETURN);
+    Scanner(String source) {
+        this(ByteBuffer.wrap(source.getBytes(StandardCharsets.UTF_8)));
     }
 
-    Scanner(String source) {
+    Scanner(ByteBuffer source) {
         this.source = source;
+        this.length = source.limit();
+        this.tokens = new TokenBuffer(this, source);
+    }
+
+    /**
+     * The source's tokens, scanned as they're asked for.
+     */
+    TokenBuffer tokens() {
+        return tokens;
     }
 
-    List<Token> scanTokens() {
-        while (!atEOF()) {
+    /**
+     * Scans until the next token has been added, skipping whitespace and
+     * comments; at the end of the source, that's another EOF.
+     */
+    void scanNext() {
+        int scanned = tokens.size();
+        while (tokens.size() == scanned) {
             start = current;
-            scanToken();
+            if (atEOF()) {
+                addToken(EOF);
+            } else {
+                scanToken();
+            }
         }
-
-        tokens.add(new Token(EOF, "", null, line));
-        return tokens;
     }
 
     private void scanToken() {
@@ -110,7 +112,7 @@ public class Scanner {
                 }
                 // Handle block comments
                 if (match('*')) {
-                    while (!source.startsWith("*/", current)) {
+                    while (!(peek() == '*' && peekNext() == '/')) {
                         if (atEOF()) {
                             Fojaccia.Error(line, "Unterminated block comment before EOF");
                             break;
@@ -137,6 +139,11 @@ public class Scanner {
                 } else if (isAlpha(c)) {
                     parseToken(IDENTIFIER);
                 } else {
+                    // Report a character outside ASCII once, not once per byte
+                    if (c >= 0x80) {
+                        while ((peek() & 0xc0) == 0x80)
+                            nextChar();
+                    }
                     Fojaccia.Error(line, "Unexpected character");
                 }
                 break;
@@ -155,7 +162,7 @@ public class Scanner {
                         nextChar();
                 }
 
-                addToken(NUMBER, Double.parseDouble(source.substring(start, current)));
+                addToken(NUMBER);
                 break;
 
             case STRING:
@@ -171,24 +178,110 @@ public class Scanner {
 
                 // Handle the closing double-quote
                 nextChar();
-                // Trim off the quotes
-                String value = source.substring(start + 1, current - 1);
-                addToken(STRING, value);
+                addToken(STRING);
                 break;
 
             case IDENTIFIER:
                 while (isAlphaNumeric(peek()))
                     nextChar();
-                type = keywords.get(source.substring(start, current)) == null
-                        ? IDENTIFIER
-                        : keywords.get(source.substring(start, current));
-                addToken(type);
+                addToken(keyword());
                 break;
             default:
                 break;
         }
     }
 
+    /**
+     * The keyword the identifier just scanned spells, if any, found by its
+     * first letters so nothing needs to be copied out of the source.
+     */
+    private TokenType keyword() {
+        int length = current - start;
+        switch (charAt(start)) {
+            case 'a':
+                return rest(1, "nd", AND);
+            case 'c':
+                if (length > 1) {
+                    switch (charAt(start + 1)) {
+                        case 'l':
+                            return rest(2, "ass", CLASS);
+                        case 'o':
+                            return rest(2, "nst", CONST);
+                    }
+                }
+                break;
+            case 'e':
+                return rest(1, "lse", ELSE);
+            case 'f':
+                if (length > 1) {
+                    switch (charAt(start + 1)) {
+                        case 'a':
+                            return rest(2, "lse", FALSE);
+                        case 'n':
+                            return rest(2, "", FN);
+                        case 'o':
+                            return rest(2, "r", FOR);
+                    }
+                }
+                break;
+            case 'i':
+                if (length > 1) {
+                    switch (charAt(start + 1)) {
+                        case 'f':
+                            return rest(2, "", IF);
+                        case 'm':
+                            return rest(2, "port", IMPORT);
+                    }
+                }
+                break;
+            case 'm':
+                return rest(1, "emo", MEMO);
+            case 'n':
+                return rest(1, "ull", NULL);
+            case 'o':
+                return rest(1, "r", OR);
+            case 'p':
+                return rest(1, "rint", PRINT);
+            case 'r':
+                return rest(1, "eturn", RETURN);
+            case 's':
+                if (length > 1) {
+                    switch (charAt(start + 1)) {
+                        case 'p':
+                            return rest(2, "awn", SPAWN);
+                        case 'u':
+                            return rest(2, "per", SUPER);
+                    }
+                }
+                break;
+            case 't':
+                if (length > 1) {
+                    switch (charAt(start + 1)) {
+                        case 'h':
+                            return rest(2, "is", THIS);
+                        case 'r':
+                            return rest(2, "ue", TRUE);
+                    }
+                }
+                break;
+            case 'v':
+                return rest(1, "ar", VAR);
+            case 'w':
+                return rest(1, "hile", WHILE);
+        }
+        return IDENTIFIER;
+    }
+
+    private TokenType rest(int offset, String rest, TokenType type) {
+        if (current - start != offset + rest.length())
+            return IDENTIFIER;
+        for (int i = 0; i < rest.length(); i++) {
+            if (charAt(start + offset + i) != rest.charAt(i))
+                return IDENTIFIER;
+        }
+        return type;
+    }
+
     private boolean isAlphaNumeric(char c) {
         return isAlpha(c) || isDigit(c);
     }
@@ -204,24 +297,22 @@ public class Scanner {
     }
 
     private void addToken(TokenType type) {
-        addToken(type, null);
+        tokens.add(type, start, current - start, line);
     }
 
-    private void addToken(TokenType type, Object literal) {
-        tokens.add(
-                new Token(
-                        type, source.substring(start, current),
-                        literal, line));
+    // One byte, taken as a Latin-1 character
+    private char charAt(int index) {
+        return (char) (source.get(index) & 0xff);
     }
 
     private char nextChar() {
-        return source.charAt(current++);
+        return charAt(current++);
     }
 
     private boolean match(char expected) {
         if (atEOF())
             return false;
-        if (source.charAt(current) != expected)
+        if (charAt(current) != expected)
             return false;
 
         current++;
@@ -231,16 +322,16 @@ public class Scanner {
     private char peek() {
         if (atEOF())
             return '\0';
-        return source.charAt(current);
+        return charAt(current);
     }
 
     private char peekNext() {
-        if (current + 1 >= source.length())
+        if (current + 1 >= length)
             return '\0';
-        return source.charAt(current + 1);
+        return charAt(current + 1);
     }
 
     private boolean atEOF() {
-        return current >= source.length();
+        return current >= length;
     }
 }
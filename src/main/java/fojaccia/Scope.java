@@ -0,0 +1,23 @@
+package fojaccia;
+
+/**
+ * The VM's counterpart to Environment for locals: one fixed-size array of
+ * slots per scope, laid out exactly as the Resolver numbered them.
+ */
+final class Scope {
+  final Scope enclosing;
+  final Object[] slots;
+
+  Scope(Scope enclosing, int size) {
+    this.enclosing = enclosing;
+    this.slots = new Object[size];
+  }
+
+  Scope ancestor(int distance) {
+    Scope scope = this;
+    for (int i = 0; i < distance; i++) {
+      scope = scope.enclosing;
+    }
+    return scope;
+  }
+}
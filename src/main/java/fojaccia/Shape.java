@@ -0,0 +1,50 @@
+package fojaccia;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The layout of a FojInstance: which offset in its value array each field
+ * lives at. Instances that gain the same fields in the same order end up
+ * sharing a shape, so a field site that has seen a shape once can go
+ * straight to the offset next time without looking at the name.
+ *
+ * Every instance starts out at ROOT, and adding a field moves it along a
+ * transition to the next shape. Shapes never change once built; only their
+ * transition tables grow.
+ */
+final class Shape {
+  static final Shape ROOT = new Shape(Map.of());
+
+  private final Map<String, Integer> offsets;
+  private final Map<String, Shape> transitions = new ConcurrentHashMap<>();
+
+  private Shape(Map<String, Integer> offsets) {
+    this.offsets = offsets;
+  }
+
+  int size() {
+    return offsets.size();
+  }
+
+  /**
+   * Returns the field's offset, or -1 if instances of this shape don't have it.
+   */
+  int offsetOf(String name) {
+    Integer offset = offsets.get(name);
+    return offset == null ? -1 : offset;
+  }
+
+  /**
+   * The shape an instance of this shape moves to when it gains the field,
+   * which is placed right after the existing ones.
+   */
+  Shape withField(String name) {
+    return transitions.computeIfAbsent(name, field -> {
+      Map<String, Integer> next = new HashMap<>(offsets);
+      next.put(field, offsets.size());
+      return new Shape(next);
+    });
+  }
+}
@@ -1,6 +1,8 @@
 package fojaccia;
 
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public abstract class Stmt {
 
@@ -26,6 +28,10 @@ public abstract class Stmt {
     R visitClassStmt(Class statement);
 
     R visitFunctionStmt(Function statement);
+
+    R visitImportStmt(Import statement);
+
+    R visitSpawnStmt(Spawn statement);
   }
 
   abstract <R> R accept(Visitor<R> visitor);
@@ -47,6 +53,12 @@ public abstract class Stmt {
     Token name;
     Expr.Variable superclass;
     List<Stmt.Function> methods;
+    // Filled in by the Resolver; -1 for globals
+    int slot = -1;
+    // Filled in by the Resolver: what each Super's index refers to
+    List<String> superMethods = List.of();
+    // The layouts of the classes it has made, by their superclass's
+    final Map<ClassLayout, ClassLayout> layouts = new ConcurrentHashMap<>();
 
     Class(Token name, Expr.Variable superclass, List<Stmt.Function> methods) {
       this.name = name;
@@ -64,6 +76,14 @@ public abstract class Stmt {
     Token name;
     List<Token> params;
     List<Stmt> body;
+    // Filled in by the Resolver; -1 for globals
+    int slot = -1;
+    // Number of slots needed for the parameters plus the body's locals
+    int scopeSize;
+    // Declared with `memo fn`: results are cached by argument values
+    boolean memoized;
+    // Kept by the Jit
+    Profile profile = new Profile();
 
     Function(Token name, List<Token> params, List<Stmt> body) {
       this.name = name;
@@ -80,6 +100,8 @@ public abstract class Stmt {
 
   static class Block extends Stmt {
     final List<Stmt> statements;
+    // Filled in by the Resolver
+    int scopeSize;
 
     Block(List<Stmt> statements) {
       this.statements = statements;
@@ -107,6 +129,8 @@ public abstract class Stmt {
   static class Return extends Stmt {
     Token keyword;
     Expr value;
+    // Filled in by the Resolver when the value is a call in tail position
+    Expr.Call tailCall;
 
     Return(Token keyword, Expr value) {
       this.keyword = keyword;
@@ -137,10 +161,15 @@ public abstract class Stmt {
   }
 
   static class While extends Stmt {
+    // The `while` or `for` the loop came from
+    final Token keyword;
     Expr condition;
     Stmt body;
+    // Kept by the Jit
+    Profile profile = new Profile();
 
-    While(Expr condition, Stmt body) {
+    While(Token keyword, Expr condition, Stmt body) {
+      this.keyword = keyword;
       this.condition = condition;
       this.body = body;
     }
@@ -151,13 +180,55 @@ public abstract class Stmt {
     }
   }
 
+  static class Import extends Stmt {
+    final Token keyword;
+    // As written, relative to the importing file
+    final String path;
+    // Filled in by the ModuleLoader: the file it refers to
+    String module;
+
+    Import(Token keyword, String path) {
+      this.keyword = keyword;
+      this.path = path;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitImportStmt(this);
+    }
+  }
+
+  static class Spawn extends Stmt {
+    final Token keyword;
+    final Expr.Call call;
+
+    Spawn(Token keyword, Expr.Call call) {
+      this.keyword = keyword;
+      this.call = call;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitSpawnStmt(this);
+    }
+  }
+
   static class Var extends Stmt {
     final Token name;
     final Expr initializer;
+    // Declared with `const`: can't be assigned, and uses may be inlined
+    final boolean constant;
+    // Filled in by the Resolver; -1 for globals
+    int slot = -1;
 
     Var(Token name, Expr initializer) {
+      this(name, initializer, false);
+    }
+
+    Var(Token name, Expr initializer, boolean constant) {
       this.name = name;
       this.initializer = initializer;
+      this.constant = constant;
     }
 
     @Override
@@ -0,0 +1,9 @@
+package fojaccia;
+
+/**
+ * Completion of a `return f(...)` in tail position: the call has its frame
+ * ready but hasn't run yet. The function whose body produced it runs it in
+ * its own place, so a chain of tail calls doesn't grow the Java stack.
+ */
+record TailCall(FojFunction function, Environment frame) {
+}
@@ -0,0 +1,115 @@
+package fojaccia;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The tasks one run of a program has spawned, each on a virtual thread of
+ * its own. The run isn't over until all of them are, however many they go
+ * on to spawn.
+ *
+ * The first RuntimeError, in a task or in the program itself, is what the
+ * run ends with. Every other task is interrupted, which stops it at its
+ * next send or receive, so nothing is left waiting on a channel that a
+ * failed task would have fed. A task that never touches a channel runs to
+ * the end.
+ *
+ * Starting a task is a happens-before edge, as with any thread: the task
+ * sees everything the program did before `spawn`.
+ */
+final class Tasks {
+  // Shared from the first spawn until every task has finished. Until then
+  // no instance or scope is seen by more than one thread, so they can skip
+  // synchronizing; a task sees them shared, since they're shared before it
+  // starts.
+  private final Environment globals;
+  private final Thread main = Thread.currentThread();
+  private final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition finished = lock.newCondition();
+  private int running = 0;
+  private volatile RuntimeError failure;
+
+  Tasks(Environment globals) {
+    this.globals = globals;
+  }
+
+  void spawn(Runnable task) {
+    globals.share();
+    lock.lock();
+    try {
+      running++;
+    } finally {
+      lock.unlock();
+    }
+
+    Thread.ofVirtual().name("foj-task").start(() -> {
+      Thread thread = Thread.currentThread();
+      threads.add(thread);
+      try {
+        // Added before checking, so a failure either shows up here or gets
+        // to interrupt it
+        if (failure == null) {
+          task.run();
+        }
+      } catch (RuntimeError error) {
+        fail(error);
+      } finally {
+        threads.remove(thread);
+        lock.lock();
+        try {
+          if (--running == 0) {
+            finished.signalAll();
+          }
+        } finally {
+          lock.unlock();
+        }
+      }
+    });
+  }
+
+  void fail(RuntimeError error) {
+    lock.lock();
+    try {
+      if (failure != null)
+        return;
+      failure = error;
+    } finally {
+      lock.unlock();
+    }
+
+    Thread current = Thread.currentThread();
+    for (Thread thread : threads) {
+      if (thread != current) {
+        thread.interrupt();
+      }
+    }
+    if (main != current) {
+      main.interrupt();
+    }
+  }
+
+  /**
+   * Waits for every task, then throws the first RuntimeError, if there was
+   * one. Called from the thread that started the run.
+   */
+  void await() {
+    lock.lock();
+    try {
+      while (running > 0) {
+        finished.awaitUninterruptibly();
+      }
+      globals.unshare();
+    } finally {
+      lock.unlock();
+    }
+
+    if (failure != null) {
+      // The interrupt was only meant to get it here
+      Thread.interrupted();
+      throw failure;
+    }
+  }
+}
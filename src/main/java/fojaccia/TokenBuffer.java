@@ -0,0 +1,213 @@
+package fojaccia;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The Scanner's output, packed into parallel arrays of type, start offset,
+ * length and line over the source, rather than one Token per token. Nothing
+ * is copied out of the source until the Parser asks for it: the text of
+ * punctuation and keywords is always the same string, identifier names are
+ * interned so each one is a single string however often it appears, and
+ * literals are read when they're turned into values.
+ *
+ * Tokens are scanned as the Parser asks for them, and only the last few are
+ * kept, so however long the source, the tokens never take up more than a
+ * handful of slots. The Parser looks at most one token back.
+ *
+ * Token objects are only made for what the syntax tree keeps, and for
+ * errors.
+ */
+final class TokenBuffer {
+  private static final TokenType[] TYPES = TokenType.values();
+  // The text of every type of token that's always spelled the same
+  private static final String[] FIXED = new String[TYPES.length];
+
+  static {
+    for (TokenType type : TYPES) {
+      FIXED[type.ordinal()] = switch (type) {
+        case LEFT_PAREN -> "(";
+        case RIGHT_PAREN -> ")";
+        case LEFT_BRACK -> "{";
+        case RIGHT_BRACK -> "}";
+        case COMMA -> ",";
+        case DOT -> ".";
+        case MINUS -> "-";
+        case PLUS -> "+";
+        case SLASH -> "/";
+        case STAR -> "*";
+        case SEMICOLON -> ";";
+        case BANG -> "!";
+        case BANG_EQUAL -> "!=";
+        case EQUAL -> "=";
+        case EQUAL_EQUAL -> "==";
+        case GREATER -> ">";
+        case GREATER_EQUAL -> ">=";
+        case LESS -> "<";
+        case LESS_EQUAL -> "<=";
+        case SLASH_STAR -> "/*";
+        case STAR_SLASH -> "*/";
+        case IDENTIFIER, STRING, NUMBER -> null;
+        case EOF -> "";
+        // Keywords are spelled like their names
+        default -> type.name().toLowerCase();
+      };
+    }
+  }
+
+  // Tokens kept, a power of two
+  private static final int WINDOW = 8;
+
+  private final Scanner scanner;
+  private final ByteBuffer source;
+  private final int[] types = new int[WINDOW];
+  private final int[] starts = new int[WINDOW];
+  private final int[] lengths = new int[WINDOW];
+  private final int[] lines = new int[WINDOW];
+  // Tokens scanned so far
+  private int size = 0;
+
+  // Open addressing, keyed by the characters of the name
+  private String[] names = new String[64];
+  private int nameCount = 0;
+
+  TokenBuffer(Scanner scanner, ByteBuffer source) {
+    this.scanner = scanner;
+    this.source = source;
+  }
+
+  void add(TokenType type, int start, int length, int line) {
+    int slot = size & (WINDOW - 1);
+    types[slot] = type.ordinal();
+    starts[slot] = start;
+    lengths[slot] = length;
+    lines[slot] = line;
+    size++;
+  }
+
+  int size() {
+    return size;
+  }
+
+  /**
+   * The type of the token at the index, counting from the start of the
+   * source, scanning up to it if it hasn't been yet. Past the end, every
+   * token is EOF.
+   */
+  TokenType type(int index) {
+    return TYPES[types[slot(index)]];
+  }
+
+  int line(int index) {
+    return lines[slot(index)];
+  }
+
+  String lexeme(int index) {
+    int slot = slot(index);
+    String fixed = FIXED[types[slot]];
+    if (fixed != null)
+      return fixed;
+    if (types[slot] == TokenType.IDENTIFIER.ordinal())
+      return name(starts[slot], lengths[slot]);
+    return text(starts[slot], lengths[slot], StandardCharsets.UTF_8);
+  }
+
+  /**
+   * The value of a number or string literal.
+   */
+  Object literal(int index) {
+    int slot = slot(index);
+    int start = starts[slot];
+    int length = lengths[slot];
+    switch (type(index)) {
+      case NUMBER:
+        return number(start, length);
+      case STRING:
+        // Trim off the quotes
+        return text(start + 1, length - 2, StandardCharsets.UTF_8);
+      default:
+        return null;
+    }
+  }
+
+  Token token(int index) {
+    return new Token(type(index), lexeme(index), literal(index), line(index));
+  }
+
+  private int slot(int index) {
+    while (index >= size) {
+      scanner.scanNext();
+    }
+    if (index < size - WINDOW)
+      throw new IllegalStateException("Token " + index + " has already been discarded");
+    return index & (WINDOW - 1);
+  }
+
+  private double number(int start, int length) {
+    // Integers are read off directly; anything with a fraction, or too big
+    // to be exact as a double, gets rounded properly by parseDouble
+    long value = 0;
+    for (int i = start; i < start + length; i++) {
+      byte c = source.get(i);
+      if (c == '.' || value >= 1L << 49)
+        return Double.parseDouble(text(start, length, StandardCharsets.ISO_8859_1));
+      value = value * 10 + (c - '0');
+    }
+    return value;
+  }
+
+  private String name(int start, int length) {
+    int hash = 0;
+    for (int i = start; i < start + length; i++) {
+      // Names are ASCII, so this is their String hashCode
+      hash = 31 * hash + source.get(i);
+    }
+
+    int mask = names.length - 1;
+    int slot = hash & mask;
+    for (String name = names[slot]; name != null; name = names[slot]) {
+      if (name.hashCode() == hash && sameName(name, start, length))
+        return name;
+      slot = (slot + 1) & mask;
+    }
+
+    String name = text(start, length, StandardCharsets.ISO_8859_1).intern();
+    names[slot] = name;
+    if (++nameCount * 2 > names.length) {
+      rehash();
+    }
+    return name;
+  }
+
+  private boolean sameName(String name, int start, int length) {
+    if (name.length() != length)
+      return false;
+    for (int i = 0; i < length; i++) {
+      if (name.charAt(i) != source.get(start + i))
+        return false;
+    }
+    return true;
+  }
+
+  private String text(int start, int length, Charset charset) {
+    byte[] bytes = new byte[length];
+    source.get(start, bytes);
+    return new String(bytes, charset);
+  }
+
+  private void rehash() {
+    String[] old = names;
+    names = new String[old.length * 2];
+    int mask = names.length - 1;
+    for (String name : old) {
+      if (name == null)
+        continue;
+      int slot = name.hashCode() & mask;
+      while (names[slot] != null) {
+        slot = (slot + 1) & mask;
+      }
+      names[slot] = name;
+    }
+  }
+}
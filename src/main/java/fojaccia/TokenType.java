@@ -18,7 +18,7 @@ public enum TokenType {
     // Keywords
     CLASS, FN, IF, ELSE, FALSE, TRUE, FOR,
     WHILE, AND, OR, NULL, SUPER, THIS, VAR,
-    PRINT, RETURN,
+    PRINT, RETURN, CONST, MEMO, IMPORT, SPAWN,
 
     EOF
 }
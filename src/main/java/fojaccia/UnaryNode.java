@@ -0,0 +1,99 @@
+package fojaccia;
+
+/**
+ * Executable behaviour behind an Expr.Unary, specialized the same way as
+ * BinaryNode.
+ */
+abstract class UnaryNode {
+
+  static final UnaryNode UNINITIALIZED = new UnaryNode() {
+    @Override
+    Object apply(Expr.Unary exp, Object right) {
+      UnaryNode node;
+      if (exp.operator.type == TokenType.BANG) {
+        node = NOT;
+      } else if (exp.operator.type == TokenType.MINUS && right instanceof Double) {
+        node = NUMBER_NEGATE;
+      } else {
+        node = GENERIC;
+      }
+      exp.node = node;
+      return node.apply(exp, right);
+    }
+  };
+
+  static final UnaryNode GENERIC = new UnaryNode() {
+    @Override
+    Object apply(Expr.Unary exp, Object right) {
+      return generic(exp, right);
+    }
+  };
+
+  static final UnaryNode NOT = new UnaryNode() {
+    @Override
+    Object apply(Expr.Unary exp, Object right) {
+      return !Interpreter.isTruthy(right);
+    }
+  };
+
+  static final UnaryNode NUMBER_NEGATE = new UnaryNode() {
+    @Override
+    Object execute(Interpreter interpreter, Expr.Unary exp) {
+      try {
+        return executeNumber(interpreter, exp);
+      } catch (UnexpectedResult result) {
+        return result.value;
+      }
+    }
+
+    @Override
+    double executeNumber(Interpreter interpreter, Expr.Unary exp) {
+      try {
+        return -interpreter.evaluateNumber(exp.right);
+      } catch (UnexpectedResult result) {
+        exp.node = GENERIC;
+        return Interpreter.expectNumber(generic(exp, result.value));
+      }
+    }
+
+    @Override
+    boolean producesNumber() {
+      return true;
+    }
+
+    @Override
+    Object apply(Expr.Unary exp, Object right) {
+      if (right instanceof Double value) {
+        return -value;
+      }
+      exp.node = GENERIC;
+      return generic(exp, right);
+    }
+  };
+
+  Object execute(Interpreter interpreter, Expr.Unary exp) {
+    return apply(exp, interpreter.evaluate(exp.right));
+  }
+
+  double executeNumber(Interpreter interpreter, Expr.Unary exp) {
+    return Interpreter.expectNumber(execute(interpreter, exp));
+  }
+
+  boolean producesNumber() {
+    return false;
+  }
+
+  abstract Object apply(Expr.Unary exp, Object right);
+
+  private static Object generic(Expr.Unary exp, Object right) {
+    switch (exp.operator.type) {
+      case BANG:
+        return !Interpreter.isTruthy(right);
+      case MINUS:
+        Interpreter.verifyNumberOperand(exp.operator, right);
+        return -(double) right;
+      default:
+        return null;
+    }
+  }
+}
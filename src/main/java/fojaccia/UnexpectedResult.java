@@ -0,0 +1,15 @@
+package fojaccia;
+
+/**
+ * Thrown by the unboxed evaluation paths when a value turns out not to be a
+ * number. It carries the value, already evaluated, so the caller can finish
+ * generically without evaluating anything twice.
+ */
+class UnexpectedResult extends RuntimeException {
+  final Object value;
+
+  UnexpectedResult(Object value) {
+    super(null, null, false, false);
+    this.value = value;
+  }
+}
@@ -0,0 +1,628 @@
+package fojaccia;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * A stack-based virtual machine for compiled Fojaccia. Expression temporaries
+ * live on the value stack; variables live in the same per-scope slot arrays
+ * the Resolver laid out for the tree-walker.
+ */
+final class VM {
+  private static final int FRAMES_MAX = 1 << 16;
+
+  private final Map<String, Object> globals = new HashMap<>();
+  // Globals declared `const`; checked here too, since REPL lines and
+  // modules are resolved one at a time
+  private final Set<String> constants = new HashSet<>();
+  // Modules that have run, or are running
+  private final Set<String> imported = new HashSet<>();
+  // What the current run's imports refer to, as they were when it was loaded
+  private Map<String, List<Stmt>> modules = Map.of();
+  // Where `print` goes
+  private final Consumer<String> out;
+  private final boolean repl;
+  private Object[] stack = new Object[256];
+  private int sp = 0;
+  private CallFrame[] frames = new CallFrame[64];
+  private int frameCount = 0;
+
+  private static final class CallFrame {
+    CompiledFunction function;
+    int ip;
+    // Index of the callee on the value stack; everything above it is popped
+    // on return
+    int base;
+    Scope scope;
+    Scope functionScope;
+    // Where to cache the result on return, for calls to a `memo fn`
+    MemoCache memo;
+    List<Object> memoKey;
+  }
+
+  VM() {
+    this(false);
+  }
+
+  VM(boolean repl) {
+    this(System.out::println, repl);
+  }
+
+  /**
+   * A VM printing a line at a time to {@code out}. One for the REPL prints
+   * the value of every expression statement too.
+   */
+  VM(Consumer<String> out, boolean repl) {
+    this.out = out;
+    this.repl = repl;
+    globals.put(Interpreter.NATIVE_CLOCK, new NativeFunction(0,
+        arguments -> (double) System.currentTimeMillis() / 1000.0));
+  }
+
+  /**
+   * Counts the module as already run, so importing it does nothing; for the
+   * file the program started from.
+   */
+  void markImported(String module) {
+    imported.add(module);
+  }
+
+  /**
+   * Compiles and runs the statements, reporting the error that stops them,
+   * if one does, and returning false if so. Throws CompileError, having run
+   * nothing, if they can't be compiled to bytecode.
+   */
+  boolean interpret(List<Stmt> statements, Map<String, List<Stmt>> modules) {
+    this.modules = modules;
+    VmCompiler compiler = new VmCompiler(repl);
+    CompiledFunction script = compiler.compile(statements);
+    if (script == null)
+      throw new CompileError(compiler.errors());
+
+    push(new Closure(script, null));
+    pushFrame(script, 0, null);
+    try {
+      run();
+      return true;
+    } catch (VmError error) {
+      Fojaccia.RuntimeError(error.line, error.getMessage());
+      return false;
+    } finally {
+      Arrays.fill(stack, null);
+      sp = 0;
+      frameCount = 0;
+    }
+  }
+
+  private void run() {
+    CallFrame frame = frames[frameCount - 1];
+    byte[] code = frame.function.code;
+    Object[] constants = frame.function.constants;
+    Scope scope = frame.scope;
+    int ip = frame.ip;
+
+    for (;;) {
+      switch (code[ip++]) {
+        case OpCode.CONSTANT: {
+          push(constants[readShort(code, ip)]);
+          ip += 2;
+          break;
+        }
+        case OpCode.NULL:
+          push(null);
+          break;
+        case OpCode.TRUE:
+          push(true);
+          break;
+        case OpCode.FALSE:
+          push(false);
+          break;
+        case OpCode.POP:
+          sp--;
+          break;
+
+        case OpCode.GET_LOCAL: {
+          Scope target = scope.ancestor(code[ip] & 0xff);
+          push(target.slots[readShort(code, ip + 1)]);
+          ip += 3;
+          break;
+        }
+        case OpCode.SET_LOCAL: {
+          Scope target = scope.ancestor(code[ip] & 0xff);
+          target.slots[readShort(code, ip + 1)] = stack[sp - 1];
+          ip += 3;
+          break;
+        }
+        case OpCode.DEFINE_LOCAL: {
+          scope.slots[readShort(code, ip)] = stack[--sp];
+          ip += 2;
+          break;
+        }
+        case OpCode.GET_GLOBAL: {
+          String name = (String) constants[readShort(code, ip)];
+          ip += 2;
+          Object value = globals.get(name);
+          if (value == null && !globals.containsKey(name)) {
+            throw error(frame, ip, "Undefined variable: " + name);
+          }
+          push(value);
+          break;
+        }
+        case OpCode.SET_GLOBAL: {
+          String name = (String) constants[readShort(code, ip)];
+          ip += 2;
+          if (!globals.containsKey(name)) {
+            throw error(frame, ip, "Undefined variable: " + name);
+          }
+          if (!this.constants.isEmpty() && this.constants.contains(name)) {
+            throw error(frame, ip, "Can't assign to a constant");
+          }
+          globals.put(name, stack[sp - 1]);
+          break;
+        }
+        case OpCode.DEFINE_GLOBAL: {
+          String name = (String) constants[readShort(code, ip)];
+          ip += 2;
+          if (!this.constants.isEmpty() && this.constants.contains(name)) {
+            throw error(frame, ip, "Constant name already exists");
+          }
+          globals.put(name, stack[--sp]);
+          break;
+        }
+        case OpCode.DEFINE_CONSTANT: {
+          String name = (String) constants[readShort(code, ip)];
+          ip += 2;
+          if (!this.constants.add(name)) {
+            throw error(frame, ip, "Constant name already exists");
+          }
+          globals.put(name, stack[--sp]);
+          break;
+        }
+        case OpCode.PUSH_SCOPE: {
+          scope = new Scope(scope, readShort(code, ip));
+          ip += 2;
+          break;
+        }
+        case OpCode.POP_SCOPE:
+          scope = scope.enclosing;
+          break;
+
+        case OpCode.GET_PROPERTY: {
+          String name = (String) constants[readShort(code, ip)];
+          ip += 2;
+          if (!(stack[sp - 1] instanceof VmInstance instance)) {
+            throw error(frame, ip, "Only instances have properties");
+          }
+          Object value = instance.fields.get(name);
+          if (value != null || instance.fields.containsKey(name)) {
+            stack[sp - 1] = value;
+            break;
+          }
+          Closure method = instance.vmClass.methods.get(name);
+          if (method == null) {
+            throw error(frame, ip, "Undefined property: `" + name + "`");
+          }
+          stack[sp - 1] = new BoundMethod(instance, method);
+          break;
+        }
+        case OpCode.SET_PROPERTY: {
+          String name = (String) constants[readShort(code, ip)];
+          ip += 2;
+          Object value = stack[--sp];
+          if (!(stack[sp - 1] instanceof VmInstance instance)) {
+            throw error(frame, ip, "Only instances have fields");
+          }
+          instance.fields.put(name, value);
+          stack[sp - 1] = value;
+          break;
+        }
+        case OpCode.GET_SUPER: {
+          int depth = code[ip] & 0xff;
+          String name = (String) constants[readShort(code, ip + 1)];
+          int receiverSlot = readShort(code, ip + 3);
+          ip += 5;
+          VmClass superclass = (VmClass) scope.ancestor(depth).slots[0];
+          VmInstance receiver = (VmInstance) scope.ancestor(depth - 1).slots[receiverSlot];
+          Closure method = superclass.methods.get(name);
+          if (method == null) {
+            throw error(frame, ip, "Undefined property `" + name + "`");
+          }
+          push(new BoundMethod(receiver, method));
+          break;
+        }
+
+        case OpCode.EQUAL: {
+          Object right = stack[--sp];
+          stack[sp - 1] = Interpreter.isEqual(stack[sp - 1], right);
+          break;
+        }
+        case OpCode.NOT_EQUAL: {
+          Object right = stack[--sp];
+          stack[sp - 1] = !Interpreter.isEqual(stack[sp - 1], right);
+          break;
+        }
+        case OpCode.GREATER: {
+          Object right = stack[--sp];
+          Object left = stack[sp - 1];
+          verifyNumberOperands(frame, ip, left, right);
+          stack[sp - 1] = (double) left > (double) right;
+          break;
+        }
+        case OpCode.GREATER_EQUAL: {
+          Object right = stack[--sp];
+          Object left = stack[sp - 1];
+          verifyNumberOperands(frame, ip, left, right);
+          stack[sp - 1] = (double) left >= (double) right;
+          break;
+        }
+        case OpCode.LESS: {
+          Object right = stack[--sp];
+          Object left = stack[sp - 1];
+          verifyNumberOperands(frame, ip, left, right);
+          stack[sp - 1] = (double) left < (double) right;
+          break;
+        }
+        case OpCode.LESS_EQUAL: {
+          Object right = stack[--sp];
+          Object left = stack[sp - 1];
+          verifyNumberOperands(frame, ip, left, right);
+          stack[sp - 1] = (double) left <= (double) right;
+          break;
+        }
+        case OpCode.ADD: {
+          Object right = stack[--sp];
+          Object left = stack[sp - 1];
+          if (left instanceof Double a && right instanceof Double b) {
+            stack[sp - 1] = a + b;
+          } else if (left instanceof String || right instanceof String) {
+            stack[sp - 1] = Interpreter.makeTreeString(left) + Interpreter.makeTreeString(right);
+          } else {
+            throw error(frame, ip, "Operands must be numbers or strings");
+          }
+          break;
+        }
+        case OpCode.SUBTRACT: {
+          Object right = stack[--sp];
+          Object left = stack[sp - 1];
+          verifyNumberOperands(frame, ip, left, right);
+          stack[sp - 1] = (double) left - (double) right;
+          break;
+        }
+        case OpCode.MULTIPLY: {
+          Object right = stack[--sp];
+          Object left = stack[sp - 1];
+          verifyNumberOperands(frame, ip, left, right);
+          stack[sp - 1] = (double) left * (double) right;
+          break;
+        }
+        case OpCode.DIVIDE: {
+          Object right = stack[--sp];
+          Object left = stack[sp - 1];
+          verifyNumberOperands(frame, ip, left, right);
+          stack[sp - 1] = (double) left / (double) right;
+          break;
+        }
+        case OpCode.NOT:
+          stack[sp - 1] = !Interpreter.isTruthy(stack[sp - 1]);
+          break;
+        case OpCode.NEGATE: {
+          if (!(stack[sp - 1] instanceof Double value)) {
+            throw error(frame, ip, "Operand must be a number");
+          }
+          stack[sp - 1] = -value;
+          break;
+        }
+
+        case OpCode.PRINT:
+          out.accept(Interpreter.makeTreeString(stack[--sp]));
+          break;
+        case OpCode.JUMP: {
+          ip += 2 + readShort(code, ip);
+          break;
+        }
+        case OpCode.JUMP_IF_FALSE: {
+          int offset = readShort(code, ip);
+          ip += 2;
+          if (!Interpreter.isTruthy(stack[sp - 1]))
+            ip += offset;
+          break;
+        }
+        case OpCode.LOOP: {
+          ip += 2 - readShort(code, ip);
+          break;
+        }
+
+        case OpCode.CALL: {
+          int argCount = code[ip++] & 0xff;
+          frame.ip = ip;
+          frame.scope = scope;
+          callValue(stack[sp - argCount - 1], argCount, frame.function.lines[ip - 1]);
+
+          frame = frames[frameCount - 1];
+          code = frame.function.code;
+          constants = frame.function.constants;
+          scope = frame.scope;
+          ip = frame.ip;
+          break;
+        }
+        case OpCode.INVOKE: {
+          String name = (String) constants[readShort(code, ip)];
+          int argCount = code[ip + 2] & 0xff;
+          ip += 3;
+          frame.ip = ip;
+          frame.scope = scope;
+          invoke(name, argCount, frame.function.lines[ip - 1]);
+
+          frame = frames[frameCount - 1];
+          code = frame.function.code;
+          constants = frame.function.constants;
+          scope = frame.scope;
+          ip = frame.ip;
+          break;
+        }
+        case OpCode.TAIL_CALL: {
+          int argCount = code[ip++] & 0xff;
+          int line = frame.function.lines[ip - 1];
+          popFrameForTailCall(frame, argCount);
+          callValue(stack[sp - argCount - 1], argCount, line);
+
+          frame = frames[frameCount - 1];
+          code = frame.function.code;
+          constants = frame.function.constants;
+          scope = frame.scope;
+          ip = frame.ip;
+          break;
+        }
+        case OpCode.TAIL_INVOKE: {
+          String name = (String) constants[readShort(code, ip)];
+          int argCount = code[ip + 2] & 0xff;
+          ip += 3;
+          int line = frame.function.lines[ip - 1];
+          popFrameForTailCall(frame, argCount);
+          invoke(name, argCount, line);
+
+          frame = frames[frameCount - 1];
+          code = frame.function.code;
+          constants = frame.function.constants;
+          scope = frame.scope;
+          ip = frame.ip;
+          break;
+        }
+        case OpCode.IMPORT: {
+          String module = (String) constants[readShort(code, ip)];
+          ip += 2;
+          if (!imported.add(module)) {
+            push(null);
+            break;
+          }
+          VmCompiler compiler = new VmCompiler(repl);
+          CompiledFunction script = compiler.compile(modules.get(module));
+          if (script == null)
+            throw new VmError(frame.function.lines[ip - 1], "Module couldn't be compiled: "
+                + String.join("; ", compiler.errors()));
+          if (frameCount == FRAMES_MAX)
+            throw new VmError(frame.function.lines[ip - 1], "Stack overflow");
+
+          // Runs like a call to the module's script, whose null gets popped
+          frame.ip = ip;
+          frame.scope = scope;
+          push(new Closure(script, null));
+          pushFrame(script, sp - 1, null);
+
+          frame = frames[frameCount - 1];
+          code = frame.function.code;
+          constants = frame.function.constants;
+          scope = frame.scope;
+          ip = frame.ip;
+          break;
+        }
+        case OpCode.RETURN: {
+          Object result = stack[--sp];
+          if (frame.function.isInitializer) {
+            result = frame.functionScope.slots[frame.function.arity];
+          }
+          if (frame.memo != null) {
+            frame.memo.store(frame.memoKey, result);
+            frame.memo = null;
+            frame.memoKey = null;
+          }
+          sp = frame.base;
+          frame.function = null;
+          frame.scope = null;
+          frame.functionScope = null;
+          frameCount--;
+          if (frameCount == 0)
+            return;
+
+          push(result);
+          frame = frames[frameCount - 1];
+          code = frame.function.code;
+          constants = frame.function.constants;
+          scope = frame.scope;
+          ip = frame.ip;
+          break;
+        }
+        case OpCode.CLOSURE: {
+          push(new Closure((CompiledFunction) constants[readShort(code, ip)], scope));
+          ip += 2;
+          break;
+        }
+
+        case OpCode.CHECK_SUPERCLASS:
+          if (!(stack[sp - 1] instanceof VmClass)) {
+            throw error(frame, ip, "Superclass must be a class");
+          }
+          break;
+        case OpCode.CLASS: {
+          String name = (String) constants[readShort(code, ip)];
+          VmClass superclass = code[ip + 2] == 1 ? (VmClass) scope.slots[0] : null;
+          ip += 3;
+          push(new VmClass(name, superclass));
+          break;
+        }
+        case OpCode.METHOD: {
+          String name = (String) constants[readShort(code, ip)];
+          ip += 2;
+          Closure method = (Closure) stack[--sp];
+          ((VmClass) stack[sp - 1]).methods.put(name, method);
+          break;
+        }
+
+        default:
+          throw error(frame, ip, "Unknown opcode " + code[ip - 1]);
+      }
+    }
+  }
+
+  /**
+   * Moves the callee and its arguments down to where the current frame's own
+   * callee sits and drops the frame, so the call that follows takes its place
+   * and returns straight to the caller.
+   */
+  private void popFrameForTailCall(CallFrame frame, int argCount) {
+    int from = sp - argCount - 1;
+    System.arraycopy(stack, from, stack, frame.base, argCount + 1);
+    Arrays.fill(stack, frame.base + argCount + 1, sp, null);
+    sp = frame.base + argCount + 1;
+
+    frame.function = null;
+    frame.scope = null;
+    frame.functionScope = null;
+    frameCount--;
+  }
+
+  private void callValue(Object callee, int argCount, int line) {
+    if (callee instanceof Closure closure) {
+      callClosure(closure, null, argCount, line);
+    } else if (callee instanceof BoundMethod bound) {
+      callClosure(bound.method, bound.receiver, argCount, line);
+    } else if (callee instanceof VmClass vmClass) {
+      VmInstance instance = new VmInstance(vmClass);
+      stack[sp - argCount - 1] = instance;
+      Closure initializer = vmClass.methods.get("init");
+      if (initializer != null) {
+        callClosure(initializer, instance, argCount, line);
+      } else if (argCount != 0) {
+        throw arityError(0, argCount, line);
+      }
+    } else if (callee instanceof NativeFunction function) {
+      if (argCount != function.arity) {
+        throw arityError(function.arity, argCount, line);
+      }
+      Object[] arguments = Arrays.copyOfRange(stack, sp - argCount, sp);
+      Object result = function.body.apply(arguments);
+      sp -= argCount + 1;
+      push(result);
+    } else {
+      throw new VmError(line, "Only functions and classes can be called");
+    }
+  }
+
+  private void invoke(String name, int argCount, int line) {
+    if (!(stack[sp - argCount - 1] instanceof VmInstance instance)) {
+      throw new VmError(line, "Only instances have properties");
+    }
+
+    Object field = instance.fields.get(name);
+    if (field != null || instance.fields.containsKey(name)) {
+      stack[sp - argCount - 1] = field;
+      callValue(field, argCount, line);
+      return;
+    }
+
+    Closure method = instance.vmClass.methods.get(name);
+    if (method == null) {
+      throw new VmError(line, "Undefined property: `" + name + "`");
+    }
+    callClosure(method, instance, argCount, line);
+  }
+
+  /**
+   * A method's receiver goes in the slot after its arguments, as in
+   * FojFunction.frame; it's null for anything else.
+   */
+  private void callClosure(Closure closure, VmInstance receiver, int argCount, int line) {
+    CompiledFunction function = closure.function;
+    if (argCount != function.arity) {
+      throw arityError(function.arity, argCount, line);
+    }
+    if (frameCount == FRAMES_MAX) {
+      throw new VmError(line, "Stack overflow");
+    }
+
+    List<Object> memoKey = null;
+    if (closure.memo != null) {
+      memoKey = Arrays.asList(Arrays.copyOfRange(stack, sp - argCount, sp));
+      Object result = closure.memo.lookup(memoKey);
+      if (result != MemoCache.MISSING) {
+        Arrays.fill(stack, sp - argCount - 1, sp, null);
+        sp -= argCount + 1;
+        push(result);
+        return;
+      }
+    }
+
+    Scope functionScope = new Scope(closure.scope, function.scopeSize);
+    System.arraycopy(stack, sp - argCount, functionScope.slots, 0, argCount);
+    if (receiver != null) {
+      functionScope.slots[argCount] = receiver;
+    }
+    pushFrame(function, sp - argCount - 1, functionScope);
+    if (memoKey != null) {
+      CallFrame frame = frames[frameCount - 1];
+      frame.memo = closure.memo;
+      frame.memoKey = memoKey;
+    }
+  }
+
+  private void pushFrame(CompiledFunction function, int base, Scope scope) {
+    if (frameCount == frames.length) {
+      frames = Arrays.copyOf(frames, frameCount * 2);
+    }
+    CallFrame frame = frames[frameCount];
+    if (frame == null) {
+      frame = new CallFrame();
+      frames[frameCount] = frame;
+    }
+    frameCount++;
+
+    frame.function = function;
+    frame.ip = 0;
+    frame.base = base;
+    frame.scope = scope;
+    frame.functionScope = scope;
+    frame.memo = null;
+    frame.memoKey = null;
+  }
+
+  private void push(Object value) {
+    if (sp == stack.length) {
+      stack = Arrays.copyOf(stack, sp * 2);
+    }
+    stack[sp++] = value;
+  }
+
+  private static int readShort(byte[] code, int ip) {
+    return ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+  }
+
+  private static VmError error(CallFrame frame, int ip, String message) {
+    return new VmError(frame.function.lines[ip - 1], message);
+  }
+
+  private static VmError arityError(int arity, int argCount, int line) {
+    return new VmError(line,
+        String.format("Expected %s arguments but got %s", arity, argCount));
+  }
+
+  private static void verifyNumberOperands(CallFrame frame, int ip, Object left, Object right) {
+    if (left instanceof Double && right instanceof Double)
+      return;
+    throw error(frame, ip, "Operand must be a number");
+  }
+}
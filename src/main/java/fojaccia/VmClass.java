@@ -0,0 +1,23 @@
+package fojaccia;
+
+import java.util.HashMap;
+import java.util.Map;
+
+final class VmClass {
+  final String name;
+  // Inherited methods are copied down when the class is created, so lookups
+  // never walk the superclass chain
+  final Map<String, Closure> methods = new HashMap<>();
+
+  VmClass(String name, VmClass superclass) {
+    this.name = name;
+    if (superclass != null) {
+      methods.putAll(superclass.methods);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+}
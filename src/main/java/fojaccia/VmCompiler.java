@@ -0,0 +1,483 @@
+package fojaccia;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compiles a resolved AST into bytecode. Locals keep the (depth, slot)
+ * layout the Resolver already worked out, so the VM's scopes line up one to
+ * one with the tree-walker's environments.
+ */
+final class VmCompiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+  private Chunk chunk;
+  private int line = 1;
+  // Tail calls would drop a memoized function's frame before it could cache
+  // the result
+  private boolean memoized = false;
+  private final List<String> errors = new ArrayList<>();
+  private final boolean repl;
+
+  VmCompiler(boolean repl) {
+    this.repl = repl;
+  }
+
+  /**
+   * Returns the top-level script, or null if the tree couldn't be compiled,
+   * in which case errors() has why.
+   */
+  CompiledFunction compile(List<Stmt> statements) {
+    chunk = new Chunk();
+    for (Stmt statement : statements) {
+      compile(statement);
+    }
+    emit(OpCode.NULL);
+    emit(OpCode.RETURN);
+
+    if (!errors.isEmpty())
+      return null;
+    return new CompiledFunction("script", 0, 0, false, false, chunk);
+  }
+
+  List<String> errors() {
+    return errors;
+  }
+
+  @Override
+  public Void visitExpressionStmt(Stmt.Expression stmt) {
+    compile(stmt.expression);
+    emit(repl ? OpCode.PRINT : OpCode.POP);
+    return null;
+  }
+
+  @Override
+  public Void visitPrintStmt(Stmt.Print stmt) {
+    compile(stmt.expression);
+    emit(OpCode.PRINT);
+    return null;
+  }
+
+  @Override
+  public Void visitReturnStmt(Stmt.Return stmt) {
+    line = stmt.keyword.line;
+    if (stmt.tailCall != null && !memoized) {
+      // The callee's RETURN hands its result straight to our caller
+      compileCall(stmt.tailCall, true);
+      return null;
+    }
+    if (stmt.value != null) {
+      compile(stmt.value);
+    } else {
+      emit(OpCode.NULL);
+    }
+    emit(OpCode.RETURN);
+    return null;
+  }
+
+  @Override
+  public Void visitIfStmt(Stmt.If stmt) {
+    compile(stmt.condition);
+    int elseJump = emitJump(OpCode.JUMP_IF_FALSE);
+    emit(OpCode.POP);
+    compile(stmt.thenBranch);
+    int endJump = emitJump(OpCode.JUMP);
+
+    patchJump(elseJump);
+    emit(OpCode.POP);
+    if (stmt.elseBranch != null) {
+      compile(stmt.elseBranch);
+    }
+    patchJump(endJump);
+    return null;
+  }
+
+  @Override
+  public Void visitWhileStmt(Stmt.While stmt) {
+    int loopStart = chunk.count();
+    compile(stmt.condition);
+    int exitJump = emitJump(OpCode.JUMP_IF_FALSE);
+    emit(OpCode.POP);
+    compile(stmt.body);
+    emitLoop(loopStart);
+
+    patchJump(exitJump);
+    emit(OpCode.POP);
+    return null;
+  }
+
+  @Override
+  public Void visitVarStmt(Stmt.Var stmt) {
+    if (stmt.initializer != null) {
+      compile(stmt.initializer);
+    } else {
+      emit(OpCode.NULL);
+    }
+    line = stmt.name.line;
+    if (stmt.constant && stmt.slot == -1) {
+      emit(OpCode.DEFINE_CONSTANT);
+      emitShort(makeConstant(stmt.name.lexeme));
+    } else {
+      emitDefine(stmt.name, stmt.slot);
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitBlockStmt(Stmt.Block stmt) {
+    emit(OpCode.PUSH_SCOPE);
+    emitShort(stmt.scopeSize);
+    for (Stmt statement : stmt.statements) {
+      compile(statement);
+    }
+    emit(OpCode.POP_SCOPE);
+    return null;
+  }
+
+  @Override
+  public Void visitClassStmt(Stmt.Class stmt) {
+    if (stmt.superclass != null) {
+      compile(stmt.superclass);
+      line = stmt.superclass.name.line;
+      emit(OpCode.CHECK_SUPERCLASS);
+    }
+
+    line = stmt.name.line;
+    emit(OpCode.NULL);
+    emitDefine(stmt.name, stmt.slot);
+
+    if (stmt.superclass != null) {
+      // Mirrors the environment the tree-walker opens to hold `super`
+      emit(OpCode.PUSH_SCOPE);
+      emitShort(1);
+      emit(OpCode.DEFINE_LOCAL);
+      emitShort(0);
+    }
+
+    emit(OpCode.CLASS);
+    emitShort(makeConstant(stmt.name.lexeme));
+    emit(stmt.superclass != null ? 1 : 0);
+
+    for (Stmt.Function method : stmt.methods) {
+      boolean isInitializer = method.name.lexeme.equals("init");
+      emit(OpCode.CLOSURE);
+      emitShort(makeConstant(function(method, isInitializer)));
+      emit(OpCode.METHOD);
+      emitShort(makeConstant(method.name.lexeme));
+    }
+
+    line = stmt.name.line;
+    if (stmt.superclass != null) {
+      emit(OpCode.POP_SCOPE);
+    }
+
+    if (stmt.slot == -1) {
+      emit(OpCode.SET_GLOBAL);
+      emitShort(makeConstant(stmt.name.lexeme));
+      emit(OpCode.POP);
+    } else {
+      emit(OpCode.DEFINE_LOCAL);
+      emitShort(stmt.slot);
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitImportStmt(Stmt.Import stmt) {
+    line = stmt.keyword.line;
+    emit(OpCode.IMPORT);
+    emitShort(makeConstant(stmt.module));
+    emit(OpCode.POP);
+    return null;
+  }
+
+  @Override
+  public Void visitSpawnStmt(Stmt.Spawn stmt) {
+    line = stmt.keyword.line;
+    error("`spawn` needs the tree-walking interpreter");
+    return null;
+  }
+
+  @Override
+  public Void visitFunctionStmt(Stmt.Function stmt) {
+    line = stmt.name.line;
+    emit(OpCode.CLOSURE);
+    emitShort(makeConstant(function(stmt, false)));
+    emitDefine(stmt.name, stmt.slot);
+    return null;
+  }
+
+  @Override
+  public Void visitBinary(Expr.Binary exp) {
+    compile(exp.left);
+    compile(exp.right);
+
+    line = exp.operator.line;
+    switch (exp.operator.type) {
+      case GREATER -> emit(OpCode.GREATER);
+      case GREATER_EQUAL -> emit(OpCode.GREATER_EQUAL);
+      case LESS -> emit(OpCode.LESS);
+      case LESS_EQUAL -> emit(OpCode.LESS_EQUAL);
+      case BANG_EQUAL -> emit(OpCode.NOT_EQUAL);
+      case EQUAL_EQUAL -> emit(OpCode.EQUAL);
+      case MINUS -> emit(OpCode.SUBTRACT);
+      case PLUS -> emit(OpCode.ADD);
+      case SLASH -> emit(OpCode.DIVIDE);
+      case STAR -> emit(OpCode.MULTIPLY);
+      default -> {
+        // The tree-walker evaluates both sides and yields null
+        emit(OpCode.POP);
+        emit(OpCode.POP);
+        emit(OpCode.NULL);
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitUnary(Expr.Unary exp) {
+    compile(exp.right);
+
+    line = exp.operator.line;
+    switch (exp.operator.type) {
+      case BANG -> emit(OpCode.NOT);
+      case MINUS -> emit(OpCode.NEGATE);
+      default -> {
+        emit(OpCode.POP);
+        emit(OpCode.NULL);
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitCall(Expr.Call exp) {
+    compileCall(exp, false);
+    return null;
+  }
+
+  private void compileCall(Expr.Call exp, boolean tail) {
+    if (exp.callee instanceof Expr.Get get) {
+      compile(get.object);
+      for (Expr argument : exp.arguments) {
+        compile(argument);
+      }
+      line = exp.paren.line;
+      emit(tail ? OpCode.TAIL_INVOKE : OpCode.INVOKE);
+      emitShort(makeConstant(get.name.lexeme));
+      emit(exp.arguments.size());
+      return;
+    }
+
+    compile(exp.callee);
+    for (Expr argument : exp.arguments) {
+      compile(argument);
+    }
+    line = exp.paren.line;
+    emit(tail ? OpCode.TAIL_CALL : OpCode.CALL);
+    emit(exp.arguments.size());
+  }
+
+  @Override
+  public Void visitGrouping(Expr.Grouping exp) {
+    compile(exp.expression);
+    return null;
+  }
+
+  @Override
+  public Void visitLiteral(Expr.Literal exp) {
+    if (exp.value == null) {
+      emit(OpCode.NULL);
+    } else if (exp.value.equals(true)) {
+      emit(OpCode.TRUE);
+    } else if (exp.value.equals(false)) {
+      emit(OpCode.FALSE);
+    } else {
+      emit(OpCode.CONSTANT);
+      emitShort(makeConstant(exp.value));
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitLogical(Expr.Logical exp) {
+    compile(exp.left);
+
+    if (exp.operator.type == TokenType.OR) {
+      int elseJump = emitJump(OpCode.JUMP_IF_FALSE);
+      int endJump = emitJump(OpCode.JUMP);
+      patchJump(elseJump);
+      emit(OpCode.POP);
+      compile(exp.right);
+      patchJump(endJump);
+    } else {
+      int endJump = emitJump(OpCode.JUMP_IF_FALSE);
+      emit(OpCode.POP);
+      compile(exp.right);
+      patchJump(endJump);
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitVariable(Expr.Variable exp) {
+    line = exp.name.line;
+    emitGet(exp, exp.name);
+    return null;
+  }
+
+  @Override
+  public Void visitAssignment(Expr.Assignment exp) {
+    compile(exp.value);
+
+    line = exp.name.line;
+    if (exp.depth != -1) {
+      emit(OpCode.SET_LOCAL);
+      emitDepth(exp.depth);
+      emitShort(exp.slot);
+    } else {
+      emit(OpCode.SET_GLOBAL);
+      emitShort(makeConstant(exp.name.lexeme));
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitGet(Expr.Get exp) {
+    compile(exp.object);
+    line = exp.name.line;
+    emit(OpCode.GET_PROPERTY);
+    emitShort(makeConstant(exp.name.lexeme));
+    return null;
+  }
+
+  @Override
+  public Void visitSet(Expr.Set exp) {
+    compile(exp.object);
+    compile(exp.value);
+    line = exp.name.line;
+    emit(OpCode.SET_PROPERTY);
+    emitShort(makeConstant(exp.name.lexeme));
+    return null;
+  }
+
+  @Override
+  public Void visitThis(Expr.This exp) {
+    line = exp.keyword.line;
+    emitGet(exp, exp.keyword);
+    return null;
+  }
+
+  @Override
+  public Void visitSuper(Expr.Super exp) {
+    line = exp.method.line;
+    emit(OpCode.GET_SUPER);
+    emitDepth(exp.depth);
+    emitShort(makeConstant(exp.method.lexeme));
+    emitShort(exp.receiver);
+    return null;
+  }
+
+  private CompiledFunction function(Stmt.Function declaration, boolean isInitializer) {
+    Chunk enclosing = chunk;
+    int enclosingLine = line;
+    boolean enclosingMemoized = memoized;
+    chunk = new Chunk();
+    memoized = declaration.memoized;
+
+    for (Stmt statement : declaration.body) {
+      compile(statement);
+    }
+    // Falling off the end returns null; initializers return `this` at runtime
+    emit(OpCode.NULL);
+    emit(OpCode.RETURN);
+
+    CompiledFunction function = new CompiledFunction(declaration.name.lexeme,
+        declaration.params.size(), declaration.scopeSize, isInitializer, declaration.memoized, chunk);
+    chunk = enclosing;
+    line = enclosingLine;
+    memoized = enclosingMemoized;
+    return function;
+  }
+
+  private void emitGet(Expr.Reference exp, Token name) {
+    if (exp.depth != -1) {
+      emit(OpCode.GET_LOCAL);
+      emitDepth(exp.depth);
+      emitShort(exp.slot);
+    } else {
+      emit(OpCode.GET_GLOBAL);
+      emitShort(makeConstant(name.lexeme));
+    }
+  }
+
+  private void emitDefine(Token name, int slot) {
+    if (slot == -1) {
+      emit(OpCode.DEFINE_GLOBAL);
+      emitShort(makeConstant(name.lexeme));
+    } else {
+      emit(OpCode.DEFINE_LOCAL);
+      emitShort(slot);
+    }
+  }
+
+  private int emitJump(byte instruction) {
+    emit(instruction);
+    emit(0xff);
+    emit(0xff);
+    return chunk.count() - 2;
+  }
+
+  private void patchJump(int offset) {
+    int jump = chunk.count() - offset - 2;
+    if (jump > 0xffff) {
+      error("Too much code to jump over");
+    }
+    chunk.patch(offset, (jump >> 8) & 0xff);
+    chunk.patch(offset + 1, jump & 0xff);
+  }
+
+  private void emitLoop(int loopStart) {
+    emit(OpCode.LOOP);
+    int offset = chunk.count() - loopStart + 2;
+    if (offset > 0xffff) {
+      error("Loop body too large");
+    }
+    emitShort(offset);
+  }
+
+  private void emitDepth(int depth) {
+    if (depth > 0xff) {
+      error("Too many nested scopes");
+    }
+    emit(depth);
+  }
+
+  private int makeConstant(Object value) {
+    int index = chunk.addConstant(value);
+    if (index > 0xffff) {
+      error("Too many constants in one function");
+      return 0;
+    }
+    return index;
+  }
+
+  private void emitShort(int value) {
+    emit((value >> 8) & 0xff);
+    emit(value & 0xff);
+  }
+
+  private void emit(int value) {
+    chunk.write(value, line);
+  }
+
+  private void error(String message) {
+    errors.add(Fojaccia.format(line, "", message));
+  }
+
+  private void compile(Stmt statement) {
+    statement.accept(this);
+  }
+
+  private void compile(Expr exp) {
+    exp.accept(this);
+  }
+}
@@ -0,0 +1,10 @@
+package fojaccia;
+
+class VmError extends RuntimeException {
+  final int line;
+
+  VmError(int line, String message) {
+    super(message, null, false, false);
+    this.line = line;
+  }
+}
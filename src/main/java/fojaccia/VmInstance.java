@@ -0,0 +1,18 @@
+package fojaccia;
+
+import java.util.HashMap;
+import java.util.Map;
+
+final class VmInstance {
+  final VmClass vmClass;
+  final Map<String, Object> fields = new HashMap<>();
+
+  VmInstance(VmClass vmClass) {
+    this.vmClass = vmClass;
+  }
+
+  @Override
+  public String toString() {
+    return vmClass.name + " instance";
+  }
+}
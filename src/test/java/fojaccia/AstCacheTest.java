@@ -0,0 +1,262 @@
+package fojaccia;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class AstCacheTest {
+  // Classes, super calls, tail calls, constants linked from functions,
+  // closures, and the same strings over and over
+  private static final String SOURCE = """
+      const GREETING = "hello";
+      const LIMIT = 10;
+      fn greet(name) { return GREETING + ", " + name; }
+      fn count(n, acc) { if (n == 0) return acc; return (count(n - 1, acc + 1)); }
+      fn even(n) { if (n == 0) return true; return odd(n - 1); }
+      fn odd(n) { if (n == 0) return false; return even(n - 1); }
+      memo fn fib(n) { if (n < 2) return n; return fib(n - 1) + fib(n - 2); }
+      class A {
+        init(n) { this.n = n; }
+        who(x) { return "A" + x + this.n; }
+        get() { fn inner(k) { return this.n + k; } return inner; }
+      }
+      class B < A {
+        init(n) { super.init(n * 2); }
+        who(x) { var f = super.who; { var y = x; return f(y) + "B"; } }
+      }
+      fn counter() {
+        var i = 0;
+        fn next() { i = i + 1; return i; }
+        return next;
+      }
+      var next = counter();
+      next();
+      for (var i = 0; i < LIMIT; i = i + 1) {
+        if (i == 3 or !(i < 8) and i != 9) print greet("loop" + i); else next();
+      }
+      print next();
+      print greet("hello");
+      print count(100000, 0);
+      print even(10001);
+      print fib(40);
+      print B(5).who("!");
+      print B(2).get()(-1);
+      print A(1).init(3).n;
+      print -LIMIT / 4 >= -3;
+      print null;
+      """;
+
+  @TempDir
+  Path directory;
+  private String previous;
+
+  @BeforeEach
+  void useDirectory() {
+    previous = System.setProperty("foj.cache.dir", directory.toString());
+  }
+
+  @AfterEach
+  void restoreDirectory() {
+    if (previous == null) {
+      System.clearProperty("foj.cache.dir");
+    } else {
+      System.setProperty("foj.cache.dir", previous);
+    }
+  }
+
+  @Test
+  void loadsWhatWasStored() {
+    List<Stmt> cold = compile(SOURCE);
+    AstCache.store("tree", cold);
+    List<Stmt> cached = AstCache.load("tree");
+    assertNotNull(cached);
+    assertSameTree(cold, cached);
+  }
+
+  @Test
+  void keepsImportsAndSpawns() {
+    List<Stmt> cold = compile("""
+        import "other.foj";
+        fn task(x) { print x; }
+        spawn task(1);
+        """);
+    AstCache.store("tree", cold);
+    assertSameTree(cold, AstCache.load("tree"));
+  }
+
+  @Test
+  void runsTheSameAsWhenCompiled() {
+    List<Stmt> cold = compile(SOURCE);
+    AstCache.store("tree", cold);
+    List<Stmt> cached = AstCache.load("tree");
+    String expected = run(cold);
+    assertEquals(expected, run(cached));
+    assertEquals(expected, run(compile(SOURCE)));
+  }
+
+  @Test
+  void writesEachStringOnce() throws IOException {
+    String name = "a_rather_long_name_that_would_add_up";
+    AstCache.store("once", compile("var " + name + " = 1; print " + name + ";"));
+    AstCache.store("often", compile("var " + name + " = 1;" + (" print " + name + ";").repeat(50)));
+    long once = Files.size(directory.resolve("once.ast"));
+    long often = Files.size(directory.resolve("often.ast"));
+    // Each further use is a print, a variable and an index, not the name
+    assertTrue(often - once < 49 * name.length());
+  }
+
+  @Test
+  void missingEntryLoadsNothing() {
+    assertNull(AstCache.load("missing"));
+  }
+
+  @Test
+  void ignoresTruncatedEntries() throws IOException {
+    AstCache.store("tree", compile(SOURCE));
+    Path file = directory.resolve("tree.ast");
+    byte[] bytes = Files.readAllBytes(file);
+    for (int length : new int[] { 0, 2, 4, bytes.length / 2, bytes.length - 1 }) {
+      Files.write(file, Arrays.copyOf(bytes, length));
+      assertNull(AstCache.load("tree"), "truncated to " + length);
+    }
+  }
+
+  @Test
+  void ignoresCorruptEntries() throws IOException {
+    AstCache.store("tree", compile(SOURCE));
+    Path file = directory.resolve("tree.ast");
+    byte[] bytes = Files.readAllBytes(file);
+
+    byte[] magic = bytes.clone();
+    magic[0] ^= 0xff;
+    Files.write(file, magic);
+    assertNull(AstCache.load("tree"));
+
+    byte[] trailing = Arrays.copyOf(bytes, bytes.length + 1);
+    Files.write(file, trailing);
+    assertNull(AstCache.load("tree"));
+
+    byte[] garbage = bytes.clone();
+    for (int i = 4; i < garbage.length; i++) {
+      garbage[i] = (byte) 0xff;
+    }
+    Files.write(file, garbage);
+    assertNull(AstCache.load("tree"));
+  }
+
+  @Test
+  void compilesAgainOverABadEntry() throws IOException {
+    Path script = directory.resolve("script.foj");
+    Files.writeString(script, SOURCE);
+    String key = AstCache.key(ByteBuffer.wrap(Files.readAllBytes(script)));
+    Path entry = directory.resolve(key + ".ast");
+    Files.write(entry, new byte[] { 0x46, 0x4f, 0x4a, 0x43, 9, 9, 9 });
+
+    String expected = run(compile(SOURCE));
+    assertEquals(expected, run(Program.compile(script)));
+    // And stored it properly this time
+    assertNotNull(AstCache.load(key));
+  }
+
+  private static List<Stmt> compile(String source) {
+    List<String> errors = new ArrayList<>();
+    List<Stmt> statements = Fojaccia.compile(new Scanner(source), errors);
+    assertEquals(List.of(), errors);
+    return statements;
+  }
+
+  private static String run(List<Stmt> statements) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new Interpreter(new PrintStream(out, true, StandardCharsets.UTF_8), false)
+        .run(new Optimizer().optimize(statements), Map.of());
+    return out.toString(StandardCharsets.UTF_8);
+  }
+
+  private static String run(Program program) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new Context(new PrintStream(out, true, StandardCharsets.UTF_8)).run(program);
+    return out.toString(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Compares the trees field by field, apart from what only gets filled in
+   * while running. A node one tree refers to from elsewhere (a tail call, a
+   * constant) has to be referred to the same way in the other.
+   */
+  private static void assertSameTree(List<Stmt> expected, List<Stmt> actual) {
+    assertSameValue(expected, actual, new IdentityHashMap<>(), "statements");
+  }
+
+  private static void assertSameValue(Object expected, Object actual, Map<Object, Object> seen,
+      String path) {
+    if (expected == null) {
+      assertNull(actual, path);
+    } else if (expected instanceof Expr || expected instanceof Stmt) {
+      Object other = seen.get(expected);
+      if (other != null) {
+        assertSame(other, actual, path);
+        return;
+      }
+      seen.put(expected, actual);
+      assertNotNull(actual, path);
+      assertEquals(expected.getClass(), actual.getClass(), path);
+      assertSameFields(expected, actual, seen, path);
+    } else if (expected instanceof Token) {
+      assertNotNull(actual, path);
+      assertSameFields(expected, actual, seen, path);
+    } else if (expected instanceof List<?> list) {
+      List<?> other = (List<?>) actual;
+      assertEquals(list.size(), other.size(), path);
+      for (int i = 0; i < list.size(); i++) {
+        assertSameValue(list.get(i), other.get(i), seen, path + "[" + i + "]");
+      }
+    } else {
+      assertEquals(expected, actual, path);
+    }
+  }
+
+  private static void assertSameFields(Object expected, Object actual, Map<Object, Object> seen,
+      String path) {
+    for (Class<?> type = expected.getClass(); type != Object.class; type = type.getSuperclass()) {
+      for (Field field : type.getDeclaredFields()) {
+        if (Modifier.isStatic(field.getModifiers()) || runtime(field.getType()))
+          continue;
+        field.setAccessible(true);
+        try {
+          assertSameValue(field.get(expected), field.get(actual), seen,
+              path + "." + type.getSimpleName() + "." + field.getName());
+        } catch (IllegalAccessException e) {
+          throw new AssertionError(e);
+        }
+      }
+    }
+  }
+
+  // What nodes learn as they run, which isn't stored
+  private static boolean runtime(Class<?> type) {
+    return type == Profile.class || type == BinaryNode.class || type == UnaryNode.class
+        || type == LogicalNode.class || type == MethodCache.class || type == FieldCache.class;
+  }
+}
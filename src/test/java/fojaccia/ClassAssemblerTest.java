@@ -0,0 +1,121 @@
+package fojaccia;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+import org.junit.jupiter.api.Test;
+
+import fojaccia.ClassAssembler.Label;
+import fojaccia.ClassAssembler.Opcodes;
+
+class ClassAssemblerTest {
+  private final ClassAssembler assembler = new ClassAssembler("fojaccia/Assembled", "java/lang/Object");
+
+  @Test
+  void forwardJumps() throws Throwable {
+    // distance(a, b): a > b ? a - b : b - a
+    ClassAssembler.Code code = assembler.method(ClassAssembler.ACC_STATIC, "distance", "(DD)D", 4);
+    Label otherwise = new Label();
+    code.local(Opcodes.DLOAD, 0, 2);
+    code.local(Opcodes.DLOAD, 2, 2);
+    code.op(Opcodes.DCMPL, -3);
+    code.jump(Opcodes.IFLE, otherwise, -1);
+    code.local(Opcodes.DLOAD, 0, 2);
+    code.local(Opcodes.DLOAD, 2, 2);
+    code.op(Opcodes.DSUB, -2);
+    code.op(Opcodes.DRETURN, -2);
+    code.place(otherwise);
+    code.local(Opcodes.DLOAD, 2, 2);
+    code.local(Opcodes.DLOAD, 0, 2);
+    code.op(Opcodes.DSUB, -2);
+    code.op(Opcodes.DRETURN, -2);
+
+    MethodHandle distance = find("distance", MethodType.methodType(double.class, double.class, double.class));
+    assertEquals(3.0, (double) distance.invokeExact(5.0, 2.0));
+    assertEquals(3.0, (double) distance.invokeExact(2.0, 5.0));
+  }
+
+  @Test
+  void backwardJumps() throws Throwable {
+    // sum(n): 1 + 2 + ... + n
+    ClassAssembler.Code code = assembler.method(ClassAssembler.ACC_STATIC, "sum", "(D)D", 2);
+    int sum = code.newLocal(2);
+    int i = code.newLocal(2);
+    Label top = new Label();
+    Label end = new Label();
+    code.doubleConstant(0);
+    code.local(Opcodes.DSTORE, sum, -2);
+    code.doubleConstant(1);
+    code.local(Opcodes.DSTORE, i, -2);
+    code.place(top);
+    code.local(Opcodes.DLOAD, i, 2);
+    code.local(Opcodes.DLOAD, 0, 2);
+    code.op(Opcodes.DCMPG, -3);
+    code.jump(Opcodes.IFGT, end, -1);
+    code.local(Opcodes.DLOAD, sum, 2);
+    code.local(Opcodes.DLOAD, i, 2);
+    code.op(Opcodes.DADD, -2);
+    code.local(Opcodes.DSTORE, sum, -2);
+    code.local(Opcodes.DLOAD, i, 2);
+    code.doubleConstant(1);
+    code.op(Opcodes.DADD, -2);
+    code.local(Opcodes.DSTORE, i, -2);
+    code.jump(Opcodes.GOTO, top, 0);
+    code.place(end);
+    code.local(Opcodes.DLOAD, sum, 2);
+    code.op(Opcodes.DRETURN, -2);
+
+    MethodHandle method = find("sum", MethodType.methodType(double.class, double.class));
+    assertEquals(5050.0, (double) method.invokeExact(100.0));
+    assertEquals(0.0, (double) method.invokeExact(0.0));
+  }
+
+  @Test
+  void wideLocals() throws Throwable {
+    ClassAssembler.Code code = assembler.method(ClassAssembler.ACC_STATIC, "far", "()D", 0);
+    int local = code.newLocal(2);
+    while (local <= 255) {
+      local = code.newLocal(2);
+    }
+    code.doubleConstant(2.5);
+    code.local(Opcodes.DSTORE, local, -2);
+    code.local(Opcodes.DLOAD, local, 2);
+    code.op(Opcodes.DRETURN, -2);
+
+    MethodHandle far = find("far", MethodType.methodType(double.class));
+    assertEquals(2.5, (double) far.invokeExact());
+  }
+
+  @Test
+  void constants() throws Throwable {
+    double[] values = { 0.0, -0.0, 1.0, 1e300, Double.NaN };
+    for (int i = 0; i < values.length; i++) {
+      ClassAssembler.Code code = assembler.method(ClassAssembler.ACC_STATIC, "d" + i, "()D", 0);
+      code.doubleConstant(values[i]);
+      code.op(Opcodes.DRETURN, -2);
+    }
+    ClassAssembler.Code code = assembler.method(ClassAssembler.ACC_STATIC, "s", "()Ljava/lang/Object;", 0);
+    code.stringConstant("assembled");
+    code.op(Opcodes.ARETURN, -1);
+
+    MethodHandles.Lookup lookup = define();
+    for (int i = 0; i < values.length; i++) {
+      MethodHandle d = lookup.findStatic(lookup.lookupClass(), "d" + i, MethodType.methodType(double.class));
+      assertEquals(Double.doubleToRawLongBits(values[i]), Double.doubleToRawLongBits((double) d.invokeExact()));
+    }
+    MethodHandle s = lookup.findStatic(lookup.lookupClass(), "s", MethodType.methodType(Object.class));
+    assertEquals("assembled", (Object) s.invokeExact());
+  }
+
+  private MethodHandle find(String name, MethodType type) throws ReflectiveOperationException {
+    MethodHandles.Lookup lookup = define();
+    return lookup.findStatic(lookup.lookupClass(), name, type);
+  }
+
+  private MethodHandles.Lookup define() throws IllegalAccessException {
+    return MethodHandles.lookup().defineHiddenClass(assembler.toByteArray(), true);
+  }
+}
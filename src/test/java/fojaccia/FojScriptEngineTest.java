@@ -0,0 +1,98 @@
+package fojaccia;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.StringWriter;
+
+import javax.script.Bindings;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+import javax.script.SimpleScriptContext;
+
+import org.junit.jupiter.api.Test;
+
+class FojScriptEngineTest {
+  private final FojScriptEngine engine =
+      (FojScriptEngine) new ScriptEngineManager().getEngineByName("fojaccia");
+  private final Bindings bindings = engine.createBindings();
+  private final StringWriter out = new StringWriter();
+  private final ScriptContext context = new SimpleScriptContext();
+
+  FojScriptEngineTest() {
+    context.setBindings(bindings, ScriptContext.ENGINE_SCOPE);
+    context.setWriter(out);
+  }
+
+  @Test
+  void foundByNameAndExtension() {
+    ScriptEngineManager manager = new ScriptEngineManager();
+    assertInstanceOf(FojScriptEngine.class, manager.getEngineByName("foj"));
+    assertInstanceOf(FojScriptEngine.class, manager.getEngineByExtension("foj"));
+  }
+
+  @Test
+  void bindingsCarryOverFromEvalToEval() throws ScriptException {
+    bindings.put("count", 1);
+    CompiledScript script = engine.compile("count = count + 1; print count;");
+    script.eval(context);
+    script.eval(context);
+    assertEquals(lines("2", "3"), out.toString());
+    assertEquals(3.0, bindings.get("count"));
+  }
+
+  @Test
+  void numbersArriveAsDoubles() throws ScriptException {
+    bindings.put("n", 21);
+    bindings.put("big", 5L);
+    engine.eval("print n * 2; print n == 21; print big / 2;", context);
+    assertEquals(lines("42", "true", "2.5"), out.toString());
+  }
+
+  @Test
+  void onlyScriptGlobalsAreWrittenBack() throws ScriptException {
+    bindings.put(ScriptEngine.FILENAME, "bound.foj");
+    engine.eval("var made = \"here\"; fn f() {}", context);
+    assertEquals("here", bindings.get("made"));
+    assertInstanceOf(FojFunction.class, bindings.get("f"));
+    assertEquals("bound.foj", bindings.get(ScriptEngine.FILENAME));
+    for (String name : Interpreter.NATIVES) {
+      assertFalse(bindings.containsKey(name), name);
+    }
+  }
+
+  @Test
+  void globalsAreWrittenBackAfterARuntimeError() {
+    bindings.put(ScriptEngine.FILENAME, "failing.foj");
+    ScriptException error = assertThrows(ScriptException.class, () -> engine.eval("""
+        var before = 1;
+        before = before + 1;
+        print -"a";
+        var after = 1;
+        """, context));
+    assertEquals(3, error.getLineNumber());
+    assertEquals("failing.foj", error.getFileName());
+    assertEquals(2.0, bindings.get("before"));
+    assertFalse(bindings.containsKey("after"));
+  }
+
+  @Test
+  void compileErrorsNameTheFileOfTheirContext() {
+    engine.getContext().setAttribute(ScriptEngine.FILENAME, "default.foj", ScriptContext.ENGINE_SCOPE);
+    bindings.put(ScriptEngine.FILENAME, "given.foj");
+    ScriptException error = assertThrows(ScriptException.class, () -> engine.eval("print", context));
+    assertEquals("given.foj", error.getFileName());
+
+    error = assertThrows(ScriptException.class, () -> engine.compile("print"));
+    assertEquals("default.foj", error.getFileName());
+  }
+
+  private static String lines(String... lines) {
+    return String.join(System.lineSeparator(), lines) + System.lineSeparator();
+  }
+}
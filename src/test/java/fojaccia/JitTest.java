@@ -0,0 +1,177 @@
+package fojaccia;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+class JitTest {
+  // Enough calls or iterations to get past the default thresholds
+  private static final String WARM_UP = "var i = 0; while (i < 1500) { %s; i = i + 1; }";
+
+  private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+  private final Context context = new Context(new PrintStream(out, true, StandardCharsets.UTF_8));
+
+  @Test
+  void compiledFunctionsReturnWhatTheInterpreterDoes() {
+    run("""
+        fn arith(a, b) { return (a + b) * (a - b) / 3 - -a; }
+        fn compare(a, b) {
+          if (a < b and !(a == b)) return 1;
+          if (a >= b or a != a) return 2;
+          return 3;
+        }
+        fn same(a, b) { if (a == b) return 1; return 0; }
+        fn sum(n) {
+          var s = 0;
+          var i = 0;
+          while (i < n) { s = s + i * i; i = i + 1; }
+          return s;
+        }
+        fn fact(n, acc) { if (n <= 1) return acc; return fact(n - 1, acc * n); }
+        fn fib(n) { if (n < 2) return n; return fib(n - 1) + fib(n - 2); }
+        fn both(x) { return arith(x, 1) + compare(x, 2); }
+        fn report() {
+          var nan = 0 / 0;
+          print arith(7, 2.5);
+          print arith(nan, 1);
+          print compare(1, 2);
+          print compare(nan, 2);
+          print compare(2, nan);
+          print same(nan, nan);
+          print same(0, -0);
+          print same(2, 2);
+          print sum(100);
+          print fact(20, 1);
+          print fib(15);
+          print both(3);
+        }
+        """);
+    run("report();");
+    String interpreted = output();
+
+    run(String.format(WARM_UP,
+        "arith(i, 1); compare(i, 2); same(i, 3); sum(3); fact(3, 1); fib(2); both(i)"));
+    for (String name : new String[] { "arith", "compare", "same", "sum", "fact", "fib", "both" }) {
+      assertNotNull(profile(name).code, name + " should be compiled");
+    }
+    run("report();");
+    assertEquals(interpreted, output());
+  }
+
+  @Test
+  void loopIsCompiledWhileItRuns() {
+    run("""
+        var s = 0;
+        var i = 0;
+        var done = false;
+        while (i < 5000) { s = s + i; i = i + 1; done = i == 5000; }
+        print s;
+        print i;
+        print done;
+        """);
+    assertEquals(lines("1.24975E7", "5000", "true"), output());
+  }
+
+  @Test
+  void deoptimizesWhenCalledWithAnotherType() {
+    run("fn add(a, b) { return a + b; }");
+    run(String.format(WARM_UP, "add(i, 1)"));
+    assertNotNull(profile("add").code);
+
+    run("print add(\"a\", \"b\");");
+    assertEquals(lines("ab"), output());
+    assertNull(profile("add").code);
+    assertEquals(1, profile("add").deopts);
+
+    run(String.format(WARM_UP, "add(i, 1)"));
+    assertNotNull(profile("add").code);
+  }
+
+  @Test
+  void deoptimizesWhenACalleeIsRedefined() {
+    run("""
+        fn scale(x) { return x * 2; }
+        fn g(x) { return scale(x) + 1; }
+        """);
+    run(String.format(WARM_UP, "g(i)"));
+    assertNotNull(profile("g").code);
+
+    run("""
+        print g(5);
+        fn scale(x) { return x * 3; }
+        print g(5);
+        """);
+    assertEquals(lines("11", "16"), output());
+    assertEquals(1, profile("g").deopts);
+  }
+
+  @Test
+  void givesUpAfterTooManyDeopts() {
+    run("fn add(a, b) { return a + b; }");
+    for (int i = 0; i < 3; i++) {
+      run(String.format(WARM_UP, "add(i, 1)"));
+      run("add(\"a\", \"b\");");
+    }
+    assertTrue(profile("add").failed);
+    run(String.format(WARM_UP, "add(i, 1)"));
+    assertNull(profile("add").code);
+  }
+
+  @Test
+  void mutualTailRecursionStaysInterpreted() {
+    run("""
+        fn even(n) { if (n == 0) return 1; return odd(n - 1); }
+        fn odd(n) { if (n == 0) return 0; return even(n - 1); }
+        """);
+    run(String.format(WARM_UP, "even(10)"));
+    // Compiled, this would run out of stack
+    run("print even(200000);");
+    assertEquals(lines("1"), output());
+    assertTrue(profile("even").failed);
+    assertNull(profile("even").code);
+  }
+
+  @Test
+  void selfTailRecursionIsCompiledAsALoop() {
+    run("fn count(n, acc) { if (n == 0) return acc; return count(n - 1, acc + 1); }");
+    run(String.format(WARM_UP, "count(3, 0)"));
+    assertNotNull(profile("count").code);
+    run("print count(1000000, 0);");
+    assertEquals(lines("1000000"), output());
+  }
+
+  @Test
+  void functionsWithSideEffectsStayInterpreted() {
+    run("fn noisy(x) { if (x < 0) print x; return x; }");
+    run(String.format(WARM_UP, "noisy(i)"));
+    assertTrue(profile("noisy").failed);
+    assertFalse(output().contains("-"));
+  }
+
+  private void run(String source) {
+    context.run(Program.compile(source));
+  }
+
+  private Profile profile(String function) {
+    return ((FojFunction) context.get(function)).declaration().profile;
+  }
+
+  // What's been printed since the last call
+  private String output() {
+    String printed = out.toString(StandardCharsets.UTF_8);
+    out.reset();
+    return printed;
+  }
+
+  private static String lines(String... lines) {
+    return String.join(System.lineSeparator(), lines) + System.lineSeparator();
+  }
+}
@@ -0,0 +1,68 @@
+package fojaccia;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import fojaccia.Fojaccia.LogLevel;
+
+class LogAppenderTest {
+  // The appender writes to whatever System.out is when it gets to a batch
+  private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+  private PrintStream previous;
+
+  @BeforeEach
+  void captureOutput() {
+    // Nothing logged before the test ends up in what it captures
+    LogAppender.flush();
+    previous = System.out;
+    System.setOut(new PrintStream(out, true, StandardCharsets.UTF_8));
+  }
+
+  @AfterEach
+  void restoreOutput() {
+    LogAppender.flush();
+    System.setOut(previous);
+  }
+
+  @Test
+  void flushReturnsAfterLoggingWhileInterrupted() {
+    assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+      Thread.currentThread().interrupt();
+      LogAppender.append(LogLevel.INFO, -1, "logged while interrupted");
+      LogAppender.flush();
+      // The interrupt is still there for whoever it was meant for
+      assertTrue(Thread.interrupted());
+    });
+    assertTrue(output()[0].endsWith("INFO\tlogged while interrupted"));
+  }
+
+  @Test
+  void flushReturnsOnceEverythingIsWritten() {
+    // More than the buffer holds, so some of them wait for room
+    assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+      for (int i = 0; i < 20_000; i++) {
+        LogAppender.append(LogLevel.INFO, i, "line " + i);
+      }
+      LogAppender.flush();
+    });
+    String[] lines = output();
+    assertEquals(20_000, lines.length);
+    for (int i = 0; i < lines.length; i++) {
+      assertTrue(lines[i].endsWith("[line " + i + "] line " + i), lines[i]);
+    }
+  }
+
+  private String[] output() {
+    return out.toString(StandardCharsets.UTF_8).split(System.lineSeparator());
+  }
+}
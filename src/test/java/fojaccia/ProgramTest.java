@@ -0,0 +1,81 @@
+package fojaccia;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ProgramTest {
+  @TempDir
+  Path directory;
+
+  @Test
+  void keepsTheModulesItWasCompiledWith() throws IOException {
+    Path module = directory.resolve("module.foj");
+    Files.writeString(module, "print \"old\";");
+    Path main = directory.resolve("main.foj");
+    Files.writeString(main, "import \"module.foj\";");
+    Program old = Program.compile(main);
+
+    Files.writeString(module, "print \"the new one\";");
+    Program current = Program.compile(main);
+
+    assertEquals(lines("old"), run(old));
+    assertEquals(lines("the new one"), run(current));
+  }
+
+  @Test
+  void keepsRunningOnceAModuleHasErrors() throws IOException {
+    Path module = directory.resolve("module.foj");
+    Files.writeString(module, "print \"old\";");
+    Path main = directory.resolve("main.foj");
+    Files.writeString(main, "import \"module.foj\";");
+    Program old = Program.compile(main);
+
+    Files.writeString(module, "print \"broken\"");
+    assertThrows(CompileError.class, () -> Program.compile(main));
+    assertEquals(lines("old"), run(old));
+  }
+
+  @Test
+  void methodCachesCarryOverFromRunToRun() {
+    Program program = Program.compile("""
+        class Point {
+          init(x) { this.x = x; }
+          twice() { return this.x * 2; }
+        }
+        fn twice(point) { return point.twice(); }
+        print twice(Point(21));
+        """);
+    Stmt.Return body = (Stmt.Return) ((Stmt.Function) program.statements.get(1)).body.get(0);
+    Expr.Call site = (Expr.Call) body.value;
+
+    // Each run makes a Point class of its own
+    for (int i = 0; i < 2 * MethodCache.LIMIT; i++) {
+      Context context = new Context(new PrintStream(OutputStream.nullOutputStream()));
+      context.run(program);
+      assertSame(((FojClass) context.get("Point")).layout, site.methods.layout);
+      assertEquals(1, site.methods.size);
+    }
+  }
+
+  private static String run(Program program) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new Context(new PrintStream(out, true, StandardCharsets.UTF_8)).run(program);
+    return out.toString(StandardCharsets.UTF_8);
+  }
+
+  private static String lines(String... lines) {
+    return String.join(System.lineSeparator(), lines) + System.lineSeparator();
+  }
+}
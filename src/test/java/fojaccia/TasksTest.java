@@ -0,0 +1,169 @@
+package fojaccia;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+class TasksTest {
+  // Long enough for any of these to finish, short enough that a task left
+  // waiting fails the test instead of hanging it
+  private static final Duration LIMIT = Duration.ofSeconds(20);
+
+  private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+  private final Context context = new Context(new PrintStream(out, true, StandardCharsets.UTF_8));
+
+  @Test
+  void runWaitsForEveryTask() {
+    run("""
+        var done = channel(100);
+        fn task(n) { if (n > 0) spawn task(n - 1); send(done, n); }
+        spawn task(99);
+        """);
+    // All of them sent, and none is waiting for room
+    run("""
+        var sum = 0;
+        for (var i = 0; i < 100; i = i + 1) sum = sum + receive(done);
+        print sum;
+        """);
+    assertEquals(lines("4950"), output());
+  }
+
+  @Test
+  void unbufferedChannelHandsOverEachValue() {
+    run("""
+        fn produce(ch) {
+          for (var i = 1; i <= 100; i = i + 1) send(ch, i);
+          send(ch, null);
+        }
+        var ch = channel(0);
+        spawn produce(ch);
+        var sum = 0;
+        var n = receive(ch);
+        while (n != null) { sum = sum + n; n = receive(ch); }
+        print sum;
+        """);
+    assertEquals(lines("5050"), output());
+  }
+
+  @Test
+  void bufferedChannelKeepsOrder() {
+    run("""
+        var ch = channel(3);
+        send(ch, "a");
+        send(ch, null);
+        send(ch, 3);
+        print receive(ch);
+        print receive(ch);
+        print receive(ch);
+        """);
+    assertEquals(lines("a", "null", "3"), output());
+  }
+
+  @Test
+  void tasksShareInstancesAndScopes() {
+    run("""
+        class Counter {}
+        var counter = Counter();
+        var lock = channel(1);
+        var finished = channel(0);
+        fn counting() {
+          // The scope gets its first number once tasks already share it
+          var count = null;
+          fn bump(times) {
+            for (var i = 0; i < times; i = i + 1) {
+              send(lock, true);
+              if (count == null) count = 0;
+              count = count + 1;
+              counter.count = count;
+              receive(lock);
+            }
+            send(finished, true);
+          }
+          for (var i = 0; i < 20; i = i + 1) spawn bump(100);
+          for (var i = 0; i < 20; i = i + 1) receive(finished);
+          return count;
+        }
+        print counting();
+        print counter.count;
+        """);
+    assertEquals(lines("2000", "2000"), output());
+  }
+
+  @Test
+  void firstErrorInATaskEndsTheRun() {
+    RuntimeError error = fails("""
+        fn waiter() { receive(channel(0)); }
+        fn boom(ch) {
+          receive(ch);
+          return 1 - "a";
+        }
+        var ch = channel(0);
+        spawn waiter();
+        spawn boom(ch);
+        send(ch, 1);
+        receive(channel(0));
+        print "unreachable";
+        """);
+    assertEquals(4, error.line());
+    assertEquals("", output());
+  }
+
+  @Test
+  void errorInTheProgramStopsItsTasks() {
+    RuntimeError error = fails("""
+        fn waiter() { receive(channel(0)); }
+        spawn waiter();
+        spawn waiter();
+        print -"a";
+        """);
+    assertEquals(4, error.line());
+  }
+
+  @Test
+  void onlyCallablesCanBeSpawned() {
+    RuntimeError error = assertThrows(RuntimeError.class, () -> run("""
+        var x = 1;
+        spawn x();
+        """));
+    assertEquals("Only functions and classes can be spawned", error.getMessage());
+  }
+
+  @Test
+  void sharingEndsWithTheRun() {
+    run("""
+        class Box {}
+        fn task() {}
+        spawn task();
+        """);
+    assertFalse(((FojClass) context.get("Box")).globals.shared());
+
+    fails("fn fail() { return -\"a\"; } spawn fail();");
+    assertFalse(((FojClass) context.get("Box")).globals.shared());
+  }
+
+  private void run(String source) {
+    context.run(Program.compile(source));
+  }
+
+  private RuntimeError fails(String source) {
+    return assertTimeoutPreemptively(LIMIT, () -> assertThrows(RuntimeError.class, () -> run(source)));
+  }
+
+  private String output() {
+    String printed = out.toString(StandardCharsets.UTF_8);
+    out.reset();
+    return printed;
+  }
+
+  private static String lines(String... lines) {
+    return String.join(System.lineSeparator(), lines) + System.lineSeparator();
+  }
+}